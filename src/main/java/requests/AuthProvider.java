@@ -0,0 +1,42 @@
+package requests;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A pluggable source of authentication for the requests sent by {@link Requests}.
+ * <p>
+ * The provider is asked to authenticate every request right before it is sent, after the caller's headers are applied,
+ * so it can set an {@code Authorization} header or sign the request. When the server answers with 401 (Unauthorized)
+ * the provider is asked to invalidate the credentials used for that request and the request is retried once.
+ * Providers that refresh credentials in the background stop doing so when they are closed.
+ * </p>
+ */
+public interface AuthProvider extends Closeable {
+
+    /**
+     * Adds authentication to the request, e.g. a bearer token or a signature.
+     *
+     * @param request The request about to be sent.
+     * @throws IOException If the credentials cannot be obtained.
+     */
+    void authenticate(HttpUriRequest request) throws IOException;
+
+    /**
+     * Invalidates the credentials used for a request that was rejected with 401 (Unauthorized),
+     * so that the next call to {@link #authenticate(HttpUriRequest)} uses fresh ones.
+     *
+     * @param request The request that was rejected.
+     */
+    void invalidate(HttpUriRequest request);
+
+    /**
+     * Releases the resources held by the provider, such as a background refresh thread.
+     * Does nothing by default.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,50 @@
+package requests;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.IOException;
+
+/**
+ * An {@link AuthProvider} that sends a cached bearer token in the {@code Authorization} header.
+ * <p>
+ * Tokens are fetched from the given source once, shared by all threads and refreshed in the background
+ * before they expire, so fetching a token is kept off the request path.
+ * </p>
+ */
+public class BearerTokenAuthProvider implements AuthProvider {
+    private static final String PREFIX = "Bearer ";
+
+    private final CredentialCache<String> tokens;
+
+    /**
+     * Constructs a new provider.
+     *
+     * @param tokenSource The source fresh tokens are fetched from.
+     * @param refreshAheadMillis How long before expiry a token is refreshed in the background, in milliseconds.
+     */
+    public BearerTokenAuthProvider(CredentialCache.Source<String> tokenSource, long refreshAheadMillis) {
+        this.tokens = new CredentialCache<>(tokenSource, refreshAheadMillis);
+    }
+
+    @Override
+    public void authenticate(HttpUriRequest request) throws IOException {
+        request.setHeader("Authorization", PREFIX + tokens.get());
+    }
+
+    @Override
+    public void invalidate(HttpUriRequest request) {
+        Header header = request.getFirstHeader("Authorization");
+        if (header != null && header.getValue().startsWith(PREFIX)) {
+            tokens.invalidate(header.getValue().substring(PREFIX.length()));
+        }
+    }
+
+    /**
+     * Stops the background refresh of the cached tokens.
+     */
+    @Override
+    public void close() {
+        tokens.close();
+    }
+}
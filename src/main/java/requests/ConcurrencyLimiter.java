@@ -0,0 +1,153 @@
+package requests;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive concurrency limiter for a single upstream host using AIMD (additive increase, multiplicative decrease).
+ * <p>
+ * The limit grows by one per round trip while the host is healthy and the limit is actually being used, and is
+ * multiplied by the backoff ratio when a request is dropped. A request counts as dropped when the host answers with
+ * 429 (Too many requests) or 500 (Internal Server Error) or when it fails with an I/O error.
+ * </p>
+ * <p>
+ * Latency is only a signal in aggregate, never per request, since one limiter is shared by every endpoint of a host and
+ * a healthy host has a latency tail. Successful latencies are collected in windows of {@value #WINDOW_SIZE}; at the end of
+ * each window its median is compared with the baseline, a slowly moving average of past window medians. If the median
+ * exceeds the latency tolerance times the baseline (plus a few milliseconds of slack, so jitter on very fast hosts is not
+ * mistaken for overload) the host is treated as queueing and the limit is backed off once for that window.
+ * </p>
+ * <p>
+ * Requests over the limit wait up to the queue timeout for a slot and are rejected after that.
+ * </p>
+ */
+public class ConcurrencyLimiter {
+    private static final int WINDOW_SIZE = 50;
+    private static final double BASELINE_WEIGHT = 0.1;
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long queueTimeoutNanos;
+
+    private double limit;
+    private int inFlight;
+    private double baselineNanos = Double.NaN;
+    private final long[] window = new long[WINDOW_SIZE];
+    private int windowCount;
+
+    /**
+     * Constructs a new limiter.
+     *
+     * @param initialLimit The limit to start with.
+     * @param minLimit The lowest the limit can drop to.
+     * @param maxLimit The highest the limit can grow to.
+     * @param backoffRatio The factor the limit is multiplied by on a drop, between 0 and 1.
+     * @param latencyTolerance How many times slower than the baseline the median latency of a window may be
+     *                         before the limit is backed off.
+     * @param queueTimeoutMillis How long a request over the limit waits for a slot, 0 to reject immediately.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                              double latencyTolerance, long queueTimeoutMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limit range: " + minLimit + ".." + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Acquires a slot, waiting up to the queue timeout if the limit is reached.
+     * If the calling thread is interrupted while waiting, the slot is not acquired and the interrupt flag is kept.
+     *
+     * @return true if a slot was acquired and must be released with {@link #release(long, boolean)}, false if rejected.
+     */
+    public synchronized boolean acquire() {
+        long deadline = System.nanoTime() + queueTimeoutNanos;
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Releases a slot and adjusts the limit from the outcome of the request.
+     *
+     * @param latencyNanos The measured latency of the request in nanoseconds.
+     * @param dropped true if the request failed or the host signalled overload.
+     */
+    public synchronized void release(long latencyNanos, boolean dropped) {
+        int previousInFlight = inFlight;
+        inFlight--;
+        if (!dropped) {
+            dropped = recordLatency(latencyNanos);
+        }
+        if (dropped) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (previousInFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Adds a successful latency to the current window and, when the window is full, compares its median with the baseline.
+     *
+     * @param latencyNanos The measured latency of a successful request in nanoseconds.
+     * @return true if a window just completed with a median too far above the baseline.
+     */
+    private boolean recordLatency(long latencyNanos) {
+        window[windowCount++] = latencyNanos;
+        if (windowCount < WINDOW_SIZE) {
+            return false;
+        }
+        windowCount = 0;
+        Arrays.sort(window);
+        long median = window[WINDOW_SIZE / 2];
+        if (Double.isNaN(baselineNanos)) {
+            baselineNanos = median;
+            return false;
+        }
+        boolean congested = median > baselineNanos * latencyTolerance + LATENCY_SLACK_NANOS;
+        // the baseline keeps moving, so it recovers after a permanent change in the upstream or the traffic mix
+        baselineNanos += (median - baselineNanos) * BASELINE_WEIGHT;
+        return congested;
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return The number of requests allowed in flight.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests currently in flight.
+     *
+     * @return The number of acquired slots.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,271 @@
+package requests;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * A cache for a single expiring credential such as a bearer token or a signing key.
+ * <p>
+ * The credential is refreshed in the background shortly before it expires, so callers normally never wait for it.
+ * Only one fetch is ever in flight: when the credential is missing or expired, every waiting thread shares the result
+ * of the same fetch instead of hitting the credential source on its own.
+ * Background refreshes are never scheduled sooner than one second apart, so a source handing out credentials that are
+ * already expired, or expire very soon, cannot be polled in a tight loop. {@link #close()} stops the refresh thread.
+ * </p>
+ *
+ * @param <T> The type of the credential.
+ */
+public class CredentialCache<T> implements Closeable {
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Source<T> source;
+    private final long refreshAheadMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Credential<T> current;
+    private CompletableFuture<Credential<T>> refreshing;
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean closed;
+
+    private static final Logger logger = Logger.getLogger(CredentialCache.class.getName());
+
+    /**
+     * Constructs a new cache. Nothing is fetched until the credential is first requested.
+     *
+     * @param source The source the credential is fetched from.
+     * @param refreshAheadMillis How long before expiry the credential is refreshed in the background, in milliseconds.
+     */
+    public CredentialCache(Source<T> source, long refreshAheadMillis) {
+        this.source = source;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "credential-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the cached credential, fetching it first if it is missing or expired.
+     *
+     * @return The credential.
+     * @throws IOException If the credential cannot be fetched, the cache is closed or the calling thread is interrupted
+     *                     while waiting.
+     */
+    public T get() throws IOException {
+        Credential<T> credential = current;
+        if (credential != null && !credential.isExpired()) {
+            return credential.getValue();
+        }
+        try {
+            return refresh().get().getValue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for credentials");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to fetch credentials", e.getCause());
+        }
+    }
+
+    /**
+     * Drops the cached credential if it is still the given one. Comparing against the rejected credential means that
+     * many requests failing with the same stale credential trigger a single refresh, not one each.
+     *
+     * @param rejected The credential that was rejected by the server.
+     */
+    public void invalidate(T rejected) {
+        invalidateIf(value -> Objects.equals(value, rejected));
+    }
+
+    /**
+     * Drops the cached credential if it matches the given condition.
+     *
+     * @param rejected Returns true for the credential that was rejected by the server.
+     */
+    public void invalidateIf(Predicate<? super T> rejected) {
+        Credential<T> credential = current;
+        if (credential != null && rejected.test(credential.getValue())) {
+            current = null;
+        }
+    }
+
+    /**
+     * Starts a fetch unless one is already in flight.
+     *
+     * @return The fetch in flight.
+     */
+    private CompletableFuture<Credential<T>> refresh() {
+        CompletableFuture<Credential<T>> future;
+        synchronized (this) {
+            if (refreshing != null) {
+                return refreshing;
+            }
+            future = new CompletableFuture<>();
+            if (closed) {
+                future.completeExceptionally(new IOException("Credential cache is closed"));
+                return future;
+            }
+            refreshing = future;
+            try {
+                scheduler.execute(() -> fetch(future));
+            } catch (RejectedExecutionException e) {
+                refreshing = null;
+                future.completeExceptionally(new IOException("Credential cache is closed", e));
+            }
+        }
+        return future;
+    }
+
+    private void fetch(CompletableFuture<Credential<T>> future) {
+        Credential<T> previous = current;
+        Credential<T> credential = null;
+        Throwable failure = null;
+        try {
+            credential = Objects.requireNonNull(source.fetch(), "Credential source returned null");
+            current = credential;
+        } catch (Exception e) {
+            failure = e;
+        }
+        synchronized (this) {
+            refreshing = null;
+        }
+        if (failure == null) {
+            future.complete(credential);
+            if (previous != null && credential.getExpiresAtMillis() <= previous.getExpiresAtMillis()) {
+                // refreshing again would only fetch the same credential; wait until it is requested after expiry
+                logger.warning("Credential source returned a credential that expires no later than the previous one");
+                return;
+            }
+            // never refresh sooner than halfway through the lifetime, even for credentials shorter lived than the lead time,
+            // and never sooner than the retry delay, even for credentials that are already expired
+            long remaining = credential.getExpiresAtMillis() - System.currentTimeMillis();
+            scheduleRefresh(Math.max(RETRY_DELAY_MILLIS, Math.max(remaining - refreshAheadMillis, remaining / 2)));
+        } else {
+            logger.warning("Failed to fetch credentials: " + failure);
+            future.completeExceptionally(failure);
+            Credential<T> stillValid = current;
+            if (stillValid != null && !stillValid.isExpired()) {
+                scheduleRefresh(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private synchronized void scheduleRefresh(long delayMillis) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+        if (!closed && delayMillis < Long.MAX_VALUE / 2) {
+            scheduledRefresh = scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the background refresh and stops the refresh thread. A credential that is still cached and valid
+     * keeps being returned, but no new credential is fetched after the cache is closed.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Credential<T>> pending;
+        synchronized (this) {
+            closed = true;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+            pending = refreshing;
+        }
+        scheduler.shutdownNow();
+        if (pending != null) {
+            // a fetch that never got to run would otherwise leave its waiters blocked forever
+            pending.completeExceptionally(new IOException("Credential cache is closed"));
+        }
+    }
+
+    /**
+     * A credential together with the time it expires.
+     *
+     * @param <T> The type of the credential.
+     */
+    public static class Credential<T> {
+        private final T value;
+        private final long expiresAtMillis;
+
+        /**
+         * Constructs a new credential.
+         *
+         * @param value The credential.
+         * @param expiresAtMillis The time the credential expires, in milliseconds since the epoch,
+         *                        or {@link Long#MAX_VALUE} if it never expires.
+         */
+        public Credential(T value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        /**
+         * Constructs a new credential that expires after the given time to live.
+         *
+         * @param value The credential.
+         * @param ttlMillis The time to live in milliseconds.
+         * @param <T> The type of the credential.
+         * @return The new credential.
+         */
+        public static <T> Credential<T> of(T value, long ttlMillis) {
+            return new Credential<>(value, System.currentTimeMillis() + ttlMillis);
+        }
+
+        /**
+         * Returns the credential.
+         *
+         * @return The credential.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the time the credential expires.
+         *
+         * @return The expiry in milliseconds since the epoch.
+         */
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    /**
+     * Fetches a fresh credential, e.g. from a token endpoint or a secret store.
+     *
+     * @param <T> The type of the credential.
+     */
+    @FunctionalInterface
+    public interface Source<T> {
+
+        /**
+         * Fetches a fresh credential.
+         *
+         * @return The credential and its expiry.
+         * @throws IOException If the credential cannot be fetched.
+         */
+        Credential<T> fetch() throws IOException;
+    }
+}
@@ -0,0 +1,157 @@
+package requests;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * An {@link AuthProvider} that signs every request with HMAC-SHA256 using a cached signing key.
+ * <p>
+ * The signed string is the method, the path with query string, the {@code X-Auth-Timestamp} header (epoch seconds)
+ * and the hex encoded SHA-256 of the body, separated by newlines. The signature is sent as
+ * {@code Authorization: HMAC-SHA256 keyId=<key id>,signature=<base64 signature>}.
+ * Signing keys are fetched once, shared by all threads and rotated in the background before they expire.
+ * </p>
+ */
+public class HmacAuthProvider implements AuthProvider {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String TIMESTAMP_HEADER = "X-Auth-Timestamp";
+    private static final String KEY_ID_PREFIX = "HMAC-SHA256 keyId=";
+
+    private final CredentialCache<SigningKey> keys;
+
+    /**
+     * Constructs a new provider.
+     *
+     * @param keySource The source fresh signing keys are fetched from.
+     * @param refreshAheadMillis How long before expiry a key is rotated in the background, in milliseconds.
+     */
+    public HmacAuthProvider(CredentialCache.Source<SigningKey> keySource, long refreshAheadMillis) {
+        this.keys = new CredentialCache<>(keySource, refreshAheadMillis);
+    }
+
+    @Override
+    public void authenticate(HttpUriRequest request) throws IOException {
+        SigningKey key = keys.get();
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        request.setHeader(TIMESTAMP_HEADER, timestamp);
+        request.setHeader("Authorization", KEY_ID_PREFIX + key.getKeyId()
+                + ",signature=" + sign(key, stringToSign(request, timestamp)));
+    }
+
+    @Override
+    public void invalidate(HttpUriRequest request) {
+        Header header = request.getFirstHeader("Authorization");
+        if (header == null || !header.getValue().startsWith(KEY_ID_PREFIX)) {
+            return;
+        }
+        String value = header.getValue();
+        int end = value.indexOf(',', KEY_ID_PREFIX.length());
+        String keyId = value.substring(KEY_ID_PREFIX.length(), end < 0 ? value.length() : end);
+        keys.invalidateIf(key -> key.getKeyId().equals(keyId));
+    }
+
+    /**
+     * Stops the background refresh of the cached signing keys.
+     */
+    @Override
+    public void close() {
+        keys.close();
+    }
+
+    /**
+     * Builds the string that is signed for a request.
+     *
+     * @param request The request to sign.
+     * @param timestamp The value of the timestamp header.
+     * @return The string to sign.
+     * @throws IOException If the request body is not repeatable or cannot be read.
+     */
+    static String stringToSign(HttpUriRequest request, String timestamp) throws IOException {
+        URI uri = request.getURI();
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        byte[] body = new byte[0];
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                if (!entity.isRepeatable()) {
+                    // reading the body here would leave nothing to send, and signing it as empty would be rejected
+                    throw new IOException("Cannot sign a request with a non-repeatable body");
+                }
+                body = EntityUtils.toByteArray(entity);
+            }
+        }
+        return request.getMethod() + "\n" + path + "\n" + timestamp + "\n" + sha256Hex(body);
+    }
+
+    /**
+     * Computes the base64 encoded HMAC-SHA256 signature of a string.
+     *
+     * @param key The signing key.
+     * @param stringToSign The string to sign.
+     * @return The base64 encoded signature.
+     */
+    static String sign(SigningKey key, String stringToSign) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key.secret, ALGORITHM));
+            return Base64.getEncoder().encodeToString(mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String sha256Hex(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A signing key and the id the server knows it by.
+     */
+    public static class SigningKey {
+        private final String keyId;
+        private final byte[] secret;
+
+        /**
+         * Constructs a new signing key.
+         *
+         * @param keyId The id of the key, sent along with every signature.
+         * @param secret The secret used to compute the signatures.
+         */
+        public SigningKey(String keyId, byte[] secret) {
+            this.keyId = keyId;
+            this.secret = secret.clone();
+        }
+
+        /**
+         * Returns the id of the key.
+         *
+         * @return The key id.
+         */
+        public String getKeyId() {
+            return keyId;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package requests;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A load generator that replays {@link RequestSpec}s through the {@link Requests} client at a target rate.
+ * <p>
+ * Scheduling is open loop: the send time of every request is fixed up front from the target rate and ramp up,
+ * independently of how long earlier requests take. Latency is measured from that intended send time, so a slow
+ * upstream shows up in the percentiles instead of silently lowering the offered load (coordinated omission).
+ * The rate ramps up linearly from zero to the target rate over the ramp up period and then stays constant.
+ * </p>
+ */
+public class LoadGenerator {
+    private final Requests requests;
+    private final List<RequestSpec> specs;
+    private String baseUrl = "";
+    private double targetRate = 10;
+    private long durationMillis = 10_000;
+    private long rampUpMillis = 0;
+    private int workerThreads = 50;
+
+    private static final Logger logger = Logger.getLogger(LoadGenerator.class.getName());
+
+    /**
+     * Constructs a new load generator.
+     *
+     * @param requests The client used to send the requests.
+     * @param specs The request specs to replay, sent round robin.
+     */
+    public LoadGenerator(Requests requests, List<RequestSpec> specs) {
+        if (specs == null || specs.isEmpty()) {
+            throw new IllegalArgumentException("At least one request spec is required");
+        }
+        this.requests = requests;
+        this.specs = new ArrayList<>(specs);
+    }
+
+    /**
+     * Sets the base URL that relative spec endpoints are resolved against.
+     *
+     * @param baseUrl The base URL, e.g. "http://localhost:8080".
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl == null ? "" : baseUrl;
+    }
+
+    /**
+     * Sets the target rate reached after the ramp up.
+     *
+     * @param targetRate Target rate in requests per second.
+     */
+    public void setTargetRate(double targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * Sets the total duration of the run, including the ramp up.
+     *
+     * @param durationMillis Duration in milliseconds.
+     */
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Sets the ramp up period during which the rate grows linearly from zero to the target rate.
+     *
+     * @param rampUpMillis Ramp up period in milliseconds.
+     */
+    public void setRampUpMillis(long rampUpMillis) {
+        this.rampUpMillis = rampUpMillis;
+    }
+
+    /**
+     * Sets the number of worker threads sending requests.
+     *
+     * @param workerThreads Number of worker threads.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Runs the load test and blocks until every scheduled request has completed.
+     *
+     * @return A report with throughput and latency percentiles per request name.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public LoadReport run() throws InterruptedException {
+        if (targetRate <= 0) {
+            throw new IllegalArgumentException("Target rate must be positive");
+        }
+        LoadReport report = new LoadReport();
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "load-generator-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long start = System.nanoTime();
+        long rampUpNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(rampUpMillis, durationMillis));
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        try {
+            for (long i = 0; ; i++) {
+                long offset = intendedOffsetNanos(i, rampUpNanos);
+                if (offset >= durationNanos) {
+                    break;
+                }
+                long intendedStart = start + offset;
+                long wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                RequestSpec spec = specs.get((int) (i % specs.size()));
+                workers.execute(() -> send(spec, intendedStart, report));
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.info("Waiting for in-flight requests to complete");
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Computes the send time of the i-th request relative to the start of the run. During the ramp up the rate
+     * grows linearly, so the number of requests sent by time t is rate * t^2 / (2 * rampUp).
+     */
+    private long intendedOffsetNanos(long i, long rampUpNanos) {
+        double rampUpSeconds = rampUpNanos / 1_000_000_000.0;
+        double rampUpRequests = targetRate * rampUpSeconds / 2;
+        double seconds;
+        if (i < rampUpRequests) {
+            seconds = Math.sqrt(2 * i * rampUpSeconds / targetRate);
+        } else {
+            seconds = rampUpSeconds + (i - rampUpRequests) / targetRate;
+        }
+        return (long) (seconds * 1_000_000_000L);
+    }
+
+    private void send(RequestSpec spec, long intendedStart, LoadReport report) {
+        boolean error;
+        try {
+            Response response = execute(spec);
+            error = response == null || response.getStatusCode() >= 500;
+        } catch (IOException | RuntimeException e) {
+            error = true;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+        report.statsFor(spec.getName()).record(latencyMicros, error);
+    }
+
+    private Response execute(RequestSpec spec) throws IOException {
+        String endpoint = spec.getEndpoint().startsWith("http://") || spec.getEndpoint().startsWith("https://")
+                ? spec.getEndpoint() : baseUrl + spec.getEndpoint();
+        switch (spec.getMethod()) {
+            case "POST":
+                return requests.httpPost(endpoint, spec.getBody(), spec.getHeaders());
+            case "DELETE":
+                return requests.httpDelete(endpoint, spec.getHeaders());
+            default:
+                return requests.httpGet(endpoint, spec.getHeaders(), spec.getQueryParams());
+        }
+    }
+
+    /**
+     * Replays a JSONL file of request specs from the command line and prints the report.
+     * <p>
+     * Usage: {@code LoadGenerator <specs.jsonl> <baseUrl> <requestsPerSecond> <durationSeconds> [rampUpSeconds] [workerThreads]}
+     * </p>
+     *
+     * @param args The command line arguments.
+     * @throws Exception If the specs cannot be read or the run is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: LoadGenerator <specs.jsonl> <baseUrl> <requestsPerSecond> <durationSeconds> [rampUpSeconds] [workerThreads]");
+            System.exit(1);
+        }
+        try (Requests requests = new Requests()) {
+            LoadGenerator generator = new LoadGenerator(requests, RequestSpec.readAll(Paths.get(args[0])));
+            generator.setBaseUrl(args[1]);
+            generator.setTargetRate(Double.parseDouble(args[2]));
+            generator.setDurationMillis((long) (Double.parseDouble(args[3]) * 1000));
+            if (args.length > 4) {
+                generator.setRampUpMillis((long) (Double.parseDouble(args[4]) * 1000));
+            }
+            if (args.length > 5) {
+                generator.setWorkerThreads(Integer.parseInt(args[5]));
+            }
+            System.out.println(generator.run());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package requests;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class collects the results of a {@link LoadGenerator} run.
+ * <p>
+ * Latencies are grouped by request name and measured from the <em>intended</em> start time of each request,
+ * so time spent waiting for a free worker is included and the percentiles are free of coordinated omission.
+ * </p>
+ */
+public class LoadReport {
+    private final ConcurrentMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private volatile long elapsedNanos;
+
+    /**
+     * Returns the statistics for the given request name, creating them if needed.
+     *
+     * @param name The request name.
+     * @return The statistics for the request name.
+     */
+    EndpointStats statsFor(String name) {
+        return endpoints.computeIfAbsent(name, k -> new EndpointStats());
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the statistics grouped by request name.
+     *
+     * @return An unmodifiable map of request name to statistics, sorted by name.
+     */
+    public Map<String, EndpointStats> getEndpoints() {
+        return Collections.unmodifiableMap(new TreeMap<>(endpoints));
+    }
+
+    /**
+     * Returns the wall clock duration of the run.
+     *
+     * @return The duration of the run in seconds.
+     */
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1_000_000_000.0;
+    }
+
+    /**
+     * Returns the total number of completed requests across all endpoints.
+     *
+     * @return The total number of completed requests.
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (EndpointStats stats : endpoints.values()) {
+            total += stats.getCount();
+        }
+        return total;
+    }
+
+    /**
+     * Returns a string representation of the report with throughput and latency percentiles per endpoint.
+     * @return A String representation of the report
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double seconds = Math.max(getElapsedSeconds(), 1e-9);
+        sb.append(String.format("Load run: %d requests in %.2f s (%.1f req/s)%n",
+                getTotalCount(), getElapsedSeconds(), getTotalCount() / seconds));
+        sb.append(String.format("%-40s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Map.Entry<String, EndpointStats> entry : getEndpoints().entrySet()) {
+            EndpointStats stats = entry.getValue();
+            LatencyHistogram h = stats.getLatencies();
+            sb.append(String.format("%-40s %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), stats.getCount(), stats.getErrors(), stats.getCount() / seconds,
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxMicros() / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Statistics for a single request name.
+     */
+    public static class EndpointStats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long latencyMicros, boolean error) {
+            latencies.recordMicros(latencyMicros);
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the number of completed requests.
+         *
+         * @return The number of completed requests, including failed ones.
+         */
+        public long getCount() {
+            return latencies.getTotalCount();
+        }
+
+        /**
+         * Returns the number of failed requests, i.e. exceptions, null responses and 5xx status codes.
+         *
+         * @return The number of failed requests.
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * Returns the latency histogram.
+         *
+         * @return The latency histogram in microseconds.
+         */
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+    }
+}
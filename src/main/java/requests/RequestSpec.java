@@ -0,0 +1,355 @@
+package requests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This class describes a single request to be replayed by the {@link LoadGenerator}.
+ * <p>
+ * Specs are read from a JSONL file, one JSON object per line, for example:
+ * </p>
+ * <pre>
+ * {"name": "list todos", "method": "GET", "endpoint": "/todos", "headers": {"Accept": "application/json"}, "queryParams": {"userId": "1"}}
+ * {"method": "POST", "endpoint": "/todos", "body": "{\"title\": \"x\"}"}
+ * </pre>
+ * Blank lines and lines starting with {@code #} are ignored. Unknown fields are ignored.
+ */
+public class RequestSpec {
+    private final String name;
+    private final String method;
+    private final String endpoint;
+    private final Map<String, String> headers;
+    private final Map<String, String> queryParams;
+    private final String body;
+
+    /**
+     * Constructs a new request spec.
+     *
+     * @param name The name used to group latencies in the report, defaults to "METHOD endpoint" when null.
+     * @param method The HTTP method, one of GET, POST or DELETE.
+     * @param endpoint The absolute URL or a path relative to the base URL of the load run.
+     * @param headers A map of HTTP headers to include in the request.
+     * @param queryParams A map of query parameters, only used for GET requests.
+     * @param body The JSON body, only used for POST requests.
+     */
+    public RequestSpec(String name, String method, String endpoint, Map<String, String> headers,
+                       Map<String, String> queryParams, String body) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("Request spec is missing an endpoint");
+        }
+        this.method = method == null ? "GET" : method.toUpperCase();
+        if (!this.method.equals("GET") && !this.method.equals("POST") && !this.method.equals("DELETE")) {
+            throw new IllegalArgumentException("Unsupported HTTP method in request spec: " + method);
+        }
+        this.endpoint = endpoint;
+        this.name = name == null ? this.method + " " + endpoint : name;
+        this.headers = headers == null ? Collections.<String, String>emptyMap() : headers;
+        this.queryParams = queryParams;
+        this.body = body == null ? "" : body;
+    }
+
+    /**
+     * Reads all request specs from a JSONL file.
+     *
+     * @param file The JSONL file to read.
+     * @return The list of request specs in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<RequestSpec> readAll(Path file) throws IOException {
+        List<RequestSpec> specs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    specs.add(parse(trimmed));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid request spec on line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Parses a single JSON object into a request spec.
+     *
+     * @param json The JSON object.
+     * @return The parsed request spec.
+     */
+    @SuppressWarnings("unchecked")
+    public static RequestSpec parse(String json) {
+        JsonReader reader = new JsonReader(json);
+        Object value = reader.readValue();
+        reader.expectEnd();
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        Map<String, Object> fields = (Map<String, Object>) value;
+        return new RequestSpec(
+                stringField(fields, "name"),
+                stringField(fields, "method"),
+                stringField(fields, "endpoint"),
+                mapField(fields, "headers"),
+                mapField(fields, "queryParams"),
+                stringField(fields, "body"));
+    }
+
+    private static String stringField(Map<String, Object> fields, String key) {
+        return scalar("Field '" + key + "'", fields.get(key));
+    }
+
+    /**
+     * Returns a JSON string, number or boolean as text. Objects and arrays are rejected rather than flattened with
+     * {@code toString()}, which would not be JSON; a JSON body has to be given as a string.
+     */
+    private static String scalar(String what, Object value) {
+        if (value instanceof Map || value instanceof List) {
+            throw new IllegalArgumentException(what + " must be a JSON string, number or boolean");
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static Map<String, String> mapField(Map<String, Object> fields, String key) {
+        Object value = fields.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Field '" + key + "' must be a JSON object");
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            String what = "Value of '" + key + "." + entry.getKey() + "'";
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException(what + " must not be null");
+            }
+            result.put(entry.getKey().toString(), scalar(what, entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name used to group this request in the report.
+     *
+     * @return The request name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the HTTP method of the request.
+     *
+     * @return The HTTP method.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the endpoint of the request.
+     *
+     * @return The absolute URL or a path relative to the base URL.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the headers of the request.
+     *
+     * @return A map of HTTP headers, never null.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the query parameters of the request.
+     *
+     * @return A map of query parameters, or null if none were given.
+     */
+    public Map<String, String> getQueryParams() {
+        return queryParams;
+    }
+
+    /**
+     * Returns the body of the request.
+     *
+     * @return The JSON body, empty if none was given.
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * A minimal JSON reader supporting objects, arrays, strings, numbers, booleans and null,
+     * enough to read request specs without pulling a JSON library into the main classpath.
+     */
+    private static class JsonReader {
+        private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+        private static final Pattern HEX4 = Pattern.compile("[0-9a-fA-F]{4}");
+
+        private final String json;
+        private int pos;
+
+        JsonReader(String json) {
+            this.json = json;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (pos >= json.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            char c = json.charAt(pos);
+            if (c == '{') {
+                return readObject();
+            } else if (c == '[') {
+                return readArray();
+            } else if (c == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = json.substring(start, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || NUMBER.matcher(literal).matches()) {
+                return literal;
+            }
+            throw new IllegalArgumentException("Unexpected " + (literal.isEmpty() ? "character '" + c + "'" : "token '" + literal + "'")
+                    + " at position " + start);
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                result.put(key, readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return result;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> result = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                result.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return result;
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < json.length()) {
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > json.length() || !HEX4.matcher(json.substring(pos, pos + 4)).matches()) {
+                            throw new IllegalArgumentException("Invalid unicode escape at position " + (pos - 2));
+                        }
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escaped);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid escape '\\" + escaped + "' at position " + (pos - 2));
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string in JSON");
+        }
+
+        private char peek() {
+            return pos < json.length() ? json.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at position " + pos);
+            }
+            pos++;
+        }
+
+        /**
+         * Fails if anything but whitespace follows the value that was read.
+         */
+        void expectEnd() {
+            skipWhitespace();
+            if (pos < json.length()) {
+                throw new IllegalArgumentException("Unexpected trailing content at position " + pos);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
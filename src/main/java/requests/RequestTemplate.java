@@ -0,0 +1,205 @@
+package requests;
+
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicNameValuePair;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A precompiled request shape for calls that only differ in their path variables, e.g. {@code http://host/todos/{id}}.
+ * <p>
+ * The URL template is split into literal parts and variables, the fixed query parameters are encoded and the fixed
+ * headers are converted once, when the template is constructed. Binding a call then only percent-encodes the variable
+ * values and concatenates the parts, instead of parsing the endpoint and re-encoding every query parameter and header
+ * on every call and every retry. Variables are bound by position, in the order they appear in the template.
+ * </p>
+ * <pre>
+ * RequestTemplate todo = new RequestTemplate(requests, "https://host/todos/{id}", headers, null);
+ * todo.get(1);
+ * todo.delete(1);
+ * </pre>
+ */
+public class RequestTemplate {
+    private final Requests requests;
+    private final String[] literals;
+    private final String[] variables;
+    private final String query;
+    private final String fragment;
+    private final Header[] headers;
+    private final URI fixedUri;
+
+    /**
+     * Constructs a new template.
+     *
+     * @param requests The client used to send the requests.
+     * @param urlTemplate The URL with path variables in braces, e.g. "http://localhost:8080/users/{userId}/todos/{id}".
+     *                    Literal parts must already be valid URI characters. A fragment, if any, is kept after the query.
+     * @param headers A map of HTTP headers sent with every call, or null.
+     * @param queryParams A map of query parameters sent with every call, or null.
+     */
+    public RequestTemplate(Requests requests, String urlTemplate, Map<String, String> headers, Map<String, String> queryParams) {
+        this.requests = requests;
+
+        int hash = urlTemplate.indexOf('#');
+        this.fragment = hash < 0 ? null : urlTemplate.substring(hash);
+        if (hash >= 0) {
+            urlTemplate = urlTemplate.substring(0, hash);
+        }
+
+        List<String> literalParts = new ArrayList<>();
+        List<String> variableNames = new ArrayList<>();
+        int pos = 0;
+        int open;
+        while ((open = urlTemplate.indexOf('{', pos)) >= 0) {
+            int close = urlTemplate.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed path variable in URL template: " + urlTemplate);
+            }
+            literalParts.add(urlTemplate.substring(pos, open));
+            variableNames.add(urlTemplate.substring(open + 1, close));
+            pos = close + 1;
+        }
+        literalParts.add(urlTemplate.substring(pos));
+        this.literals = literalParts.toArray(new String[0]);
+        this.variables = variableNames.toArray(new String[0]);
+
+        if (queryParams != null && !queryParams.isEmpty()) {
+            List<NameValuePair> pairs = new ArrayList<>();
+            for (Map.Entry<String, String> entry : queryParams.entrySet()) {
+                pairs.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
+            }
+            this.query = (urlTemplate.indexOf('?') < 0 ? "?" : "&") + URLEncodedUtils.format(pairs, StandardCharsets.UTF_8);
+        } else {
+            this.query = null;
+        }
+
+        List<Header> headerList = new ArrayList<>();
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                headerList.add(new BasicHeader(entry.getKey(), entry.getValue()));
+            }
+        }
+        this.headers = headerList.toArray(new Header[0]);
+
+        // validates the literal parts once; a template without variables is fully precompiled
+        Object[] placeholders = new Object[variables.length];
+        for (int i = 0; i < placeholders.length; i++) {
+            placeholders[i] = "x";
+        }
+        URI uri = bind(placeholders);
+        this.fixedUri = variables.length == 0 ? uri : null;
+    }
+
+    /**
+     * Builds the URI of a call from the values of the path variables.
+     *
+     * @param pathValues The values of the path variables, in the order they appear in the template.
+     * @return The URI of the call.
+     * @throws IllegalArgumentException If the number of values does not match, or a value is null, empty or a dot segment.
+     */
+    public URI bind(Object... pathValues) {
+        if (fixedUri != null && pathValues.length == 0) {
+            return fixedUri;
+        }
+        if (pathValues.length != variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " path values for " + String.join(", ", variables)
+                    + " but got " + pathValues.length);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+            if (pathValues[i] == null) {
+                throw new IllegalArgumentException("Path variable " + variables[i] + " must not be null");
+            }
+            appendEncoded(sb, String.valueOf(pathValues[i]));
+        }
+        sb.append(literals[variables.length]);
+        if (query != null) {
+            sb.append(query);
+        }
+        if (fragment != null) {
+            sb.append(fragment);
+        }
+        return URI.create(sb.toString());
+    }
+
+    /**
+     * Performs an HTTP GET request to the bound URI.
+     *
+     * @param pathValues The values of the path variables.
+     * @return A Response object containing the response headers, status code and body, or null if all retries failed.
+     * @throws IOException If an I/O error occurs while making a request.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached.
+     */
+    public Response get(Object... pathValues) throws IOException {
+        return requests.httpGet(bind(pathValues), headers, null);
+    }
+
+    /**
+     * Performs an HTTP POST request with a JSON body to the bound URI.
+     *
+     * @param jsonbody The JSON string to be sent as the request body.
+     * @param pathValues The values of the path variables.
+     * @return An object containing the response headers, status code and body.
+     * @throws IOException If an I/O error occurs while making the request.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached.
+     */
+    public Response post(String jsonbody, Object... pathValues) throws IOException {
+        return requests.httpPost(bind(pathValues), headers, jsonbody, null);
+    }
+
+    /**
+     * Performs an HTTP DELETE request to the bound URI.
+     *
+     * @param pathValues The values of the path variables.
+     * @return An object containing the response headers, status code and body, or null if the request failed.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached.
+     */
+    public Response delete(Object... pathValues) {
+        return requests.httpDelete(bind(pathValues), headers, null);
+    }
+
+    /**
+     * Percent-encodes a path variable value. Values made of unreserved characters only, such as numeric ids,
+     * are appended as they are.
+     */
+    static void appendEncoded(StringBuilder sb, String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Path variable value must not be empty");
+        }
+        if (value.equals(".") || value.equals("..")) {
+            throw new IllegalArgumentException("Path variable value must not be a dot segment: " + value);
+        }
+        int i = 0;
+        while (i < value.length() && isUnreserved(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) {
+            sb.append(value);
+            return;
+        }
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if (isUnreserved(c)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
@@ -1,19 +1,23 @@
 
 package requests;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -21,6 +25,10 @@ import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,13 +39,30 @@ import java.util.stream.Collectors;
  * <p>
  * Configuration for retry behavior is loaded from a properties file named "config.properties"
  * </p>
+ * <p>
+ * The number of in-flight requests per upstream host is bounded by an adaptive {@link ConcurrencyLimiter}
+ * which is configured by the "limiter.*" properties and can be turned off with "limiter.enabled=false"
+ * </p>
+ * <p>
+ * Every instance sends its requests through one pooled HTTP client, so connections are reused across calls and retries.
+ * The pool size is configured by the "http.*" properties. Call {@link #close()} to release the pooled connections
+ * </p>
  * @author Ojas Geet
  */
 @SuppressWarnings("CallToPrintStackTrace")
-public class Requests {
+public class Requests implements Closeable {
     private CloseableHttpClient httpClient;
     private int maxRetryCount;
     private long retryDelay;
+    private boolean limiterEnabled;
+    private int limiterInitialLimit;
+    private int limiterMinLimit;
+    private int limiterMaxLimit;
+    private double limiterBackoffRatio;
+    private double limiterLatencyTolerance;
+    private long limiterQueueTimeout;
+    private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private volatile AuthProvider authProvider;
 
     private static final Logger logger = Logger.getLogger(Requests.class.getName());
 
@@ -61,8 +86,8 @@ public class Requests {
     }
 
     /**
-     * Loads retry configuration properties from the "config.properties" file.
-     * Properties include max retry count and retry delay.
+     * Loads retry, concurrency limiter and connection pool configuration properties from the "config.properties" file
+     * and creates the HTTP client. Properties include max retry count, retry delay, the "limiter.*" and the "http.*" settings.
      *
      * @param overrideProperties Properties object to override the defaults from the "config.properties" file
      */
@@ -71,21 +96,29 @@ public class Requests {
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
             if (input != null) {
                 properties.load(input);
-                maxRetryCount = Integer.parseInt(properties.getProperty("retry.maxCount", "3"));
-                retryDelay = Long.parseLong(properties.getProperty("retry.delay", "10000"));
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         if (overrideProperties != null) {
-            if (overrideProperties.containsKey("retry.maxCount")) {
-                maxRetryCount = Integer.parseInt(overrideProperties.getProperty("retry.maxCount"));
-            }
-            if (overrideProperties.containsKey("retry.delay")) {
-                retryDelay = Long.parseLong(overrideProperties.getProperty("retry.delay"));
-            }
+            properties.putAll(overrideProperties);
         }
+
+        maxRetryCount = Integer.parseInt(properties.getProperty("retry.maxCount", "3"));
+        retryDelay = Long.parseLong(properties.getProperty("retry.delay", "10000"));
+        limiterEnabled = Boolean.parseBoolean(properties.getProperty("limiter.enabled", "true"));
+        limiterInitialLimit = Integer.parseInt(properties.getProperty("limiter.initialLimit", "20"));
+        limiterMinLimit = Integer.parseInt(properties.getProperty("limiter.minLimit", "1"));
+        limiterMaxLimit = Integer.parseInt(properties.getProperty("limiter.maxLimit", "200"));
+        limiterBackoffRatio = Double.parseDouble(properties.getProperty("limiter.backoffRatio", "0.9"));
+        limiterLatencyTolerance = Double.parseDouble(properties.getProperty("limiter.latencyTolerance", "2.0"));
+        limiterQueueTimeout = Long.parseLong(properties.getProperty("limiter.queueTimeout", "1000"));
+
+        httpClient = HttpClients.custom()
+                .setMaxConnPerRoute(Integer.parseInt(properties.getProperty("http.maxConnectionsPerHost", "200")))
+                .setMaxConnTotal(Integer.parseInt(properties.getProperty("http.maxConnections", "400")))
+                .build();
     }
 
     /**
@@ -106,6 +139,128 @@ public class Requests {
         this.retryDelay=retryDelay;
     }
 
+    /**
+     * Sets the provider that authenticates every request, e.g. with a cached bearer token or an HMAC signature.
+     * Requests rejected with 401 (Unauthorized) are retried once with fresh credentials
+     * <p>
+     * The caller keeps ownership of the provider: neither this method nor {@link #close()} closes it, and a provider
+     * replaced by a later call is not closed either. Close a provider, which stops its background refresh thread,
+     * once no {@code Requests} instance uses it any more
+     * </p>
+     *
+     * @param authProvider The provider to use, or null to send requests with the caller's headers only
+     */
+    public void setAuthProvider(AuthProvider authProvider){
+        this.authProvider=authProvider;
+    }
+
+    /**
+     * Enables or disables the adaptive per host concurrency limit
+     *
+     * @param limiterEnabled true to bound in-flight requests per host, false to send every request immediately
+     */
+    public void setLimiterEnabled(boolean limiterEnabled){
+        this.limiterEnabled=limiterEnabled;
+    }
+
+    /**
+     * Returns the adaptive concurrency limiter for the host of the given URL, creating it if needed
+     *
+     * @param url Any URL on the upstream host
+     * @return The limiter shared by all requests to that host
+     */
+    public ConcurrencyLimiter getLimiter(String url){
+        return limiterFor(URI.create(url));
+    }
+
+    private ConcurrencyLimiter limiterFor(URI uri){
+        HttpHost host = URIUtils.extractHost(uri);
+        String key = host == null ? String.valueOf(uri.getAuthority()) : host.toURI();
+        return limiters.computeIfAbsent(key, k -> new ConcurrencyLimiter(limiterInitialLimit, limiterMinLimit,
+                limiterMaxLimit, limiterBackoffRatio, limiterLatencyTolerance, limiterQueueTimeout));
+    }
+
+    /**
+     * Executes a request, authenticated by the auth provider if one is set. A 401 response invalidates the
+     * credentials used and the request is retried once with fresh ones.
+     *
+     * @param client The client to execute the request with.
+     * @param request The request to execute.
+     * @return The response of the request, with its body fully read.
+     * @throws IOException If an I/O error occurs while making the request or fetching credentials.
+     */
+    private Response execute(HttpClient client, HttpUriRequest request) throws IOException {
+        AuthProvider provider = authProvider;
+        if (provider == null) {
+            return executeWithinLimit(client, request);
+        }
+        provider.authenticate(request);
+        Response response = executeWithinLimit(client, request);
+        if (response.getStatusCode() != 401) {
+            return response;
+        }
+        logger.info("Received status code 401, retrying once with fresh credentials");
+        provider.invalidate(request);
+        provider.authenticate(request);
+        return executeWithinLimit(client, request);
+    }
+
+    /**
+     * Executes a request within the concurrency limit of its host and feeds the outcome back to the limiter.
+     * The slot is held, and the latency measured, until the response body has been read and the response closed,
+     * so slow bodies count against the limit. 429 and 500 responses and I/O errors count as drops and shrink the limit.
+     *
+     * @param client The client to execute the request with.
+     * @param request The request to execute.
+     * @return The response of the request, with its body fully read.
+     * @throws IOException If an I/O error occurs while making the request or reading the response.
+     * @throws RejectedExecutionException If no slot becomes available within the queue timeout.
+     */
+    private Response executeWithinLimit(HttpClient client, HttpUriRequest request) throws IOException {
+        if (!limiterEnabled) {
+            return read(client.execute(request));
+        }
+        ConcurrencyLimiter limiter = limiterFor(request.getURI());
+        if (!limiter.acquire()) {
+            throw new RejectedExecutionException("Concurrency limit of " + limiter.getLimit()
+                    + " reached for " + request.getURI().getHost());
+        }
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            Response response = read(client.execute(request));
+            dropped = response.getStatusCode() == 429 || response.getStatusCode() == 500;
+            return response;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    /**
+     * Reads the headers, status code and body of a response and releases its connection.
+     *
+     * @param httpResponse The response to read.
+     * @return An object containing the response headers, status code and body.
+     * @throws IOException If an I/O error occurs while reading the body.
+     */
+    private static Response read(HttpResponse httpResponse) throws IOException {
+        try {
+            Map<String, String> responseHeaders = Arrays.stream(httpResponse.getAllHeaders())
+                    .collect(Collectors.toMap(org.apache.http.Header::getName, org.apache.http.Header::getValue));
+            String responseBody = null;
+            HttpEntity entity = httpResponse.getEntity();
+            if (entity != null) {
+                responseBody = EntityUtils.toString(entity);
+            }
+            return new Response(responseHeaders, httpResponse.getStatusLine().getStatusCode(), responseBody);
+        } finally {
+            EntityUtils.consumeQuietly(httpResponse.getEntity());
+            if (httpResponse instanceof CloseableHttpResponse) {
+                ((CloseableHttpResponse) httpResponse).close();
+            }
+        }
+    }
+
 
 
     /**
@@ -118,69 +273,54 @@ public class Requests {
      * @param queryParams A map of query parameters to include in the request URL.
      * @return A Response object containing the response headers, status code and body.
      * @throws IOException If an I/O error occurs while making a request.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached and no slot frees up
+     *                                    within {@code limiter.queueTimeout} milliseconds.
      */
     public Response httpGet(String endpoint, Map<String,String>headers,Map<String,String> queryParams) throws IOException {
-        int retryCount=0;
-        while(retryCount<=maxRetryCount) {
-            HttpClient client = HttpClients.createDefault();
-            URIBuilder builder;
-            try {
-                builder = new URIBuilder(endpoint);
-                if (queryParams != null) {
-                    for (Map.Entry<String, String> entry : queryParams.entrySet()) {
-                        builder.setParameter(entry.getKey(), entry.getValue());
-                    }
+        URI uri;
+        try {
+            URIBuilder builder = new URIBuilder(endpoint);
+            if (queryParams != null) {
+                for (Map.Entry<String, String> entry : queryParams.entrySet()) {
+                    builder.setParameter(entry.getKey(), entry.getValue());
                 }
-            } catch (URISyntaxException e) {
-                throw new RuntimeException(e);
-            }
-
-            URI uri;
-            try {
-                uri = builder.build();
-            } catch (URISyntaxException e) {
-                throw new RuntimeException(e);
             }
+            uri = builder.build();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        return httpGet(uri, null, headers);
+    }
 
+    /**
+     * Performs an HTTP GET request to an already built URI, retrying on 429 and 500 like {@link #httpGet(String, Map, Map)}.
+     * The URI is built once and reused across retries.
+     *
+     * @param uri The URI of the resource to be fetched, including the query string.
+     * @param fixedHeaders Headers shared by every call of a {@link RequestTemplate}, or null.
+     * @param headers A map of HTTP headers to include in the request, or null.
+     * @return A Response object containing the response headers, status code and body.
+     * @throws IOException If an I/O error occurs while making a request.
+     */
+    Response httpGet(URI uri, Header[] fixedHeaders, Map<String,String> headers) throws IOException {
+        int retryCount=0;
+        while(retryCount<=maxRetryCount) {
             HttpGet request = new HttpGet(uri);
-            CloseableHttpResponse response = null;
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                request.setHeader(header.getKey(), header.getValue());
-            }
-            logger.info("Request Headers:");
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                request.setHeader(header.getKey(), header.getValue());
-                logger.info(header.getKey() + ": " + header.getValue());
-            }
+            setHeaders(request, fixedHeaders, headers);
             try {
-                response = (CloseableHttpResponse) client.execute(request);
-                int statuscode = response.getStatusLine().getStatusCode();
-                if (response.getStatusLine().getStatusCode() == 429 || response.getStatusLine().getStatusCode() == 500) {
-                 logger.info("Received status code " + response.getStatusLine().getStatusCode() + ", retrying after " + retryDelay/ 1000 + " seconds");
+                Response response = execute(httpClient, request);
+                if (response.getStatusCode() == 429 || response.getStatusCode() == 500) {
+                 logger.info("Received status code " + response.getStatusCode() + ", retrying after " + retryDelay/ 1000 + " seconds");
                     Thread.sleep(retryDelay);
                     retryCount++;
                     continue;
                 }
-                Map<String, String> responseHeaders = Arrays.stream(response.getAllHeaders()).collect(Collectors.toMap(org.apache.http.Header::getName, org.apache.http.Header::getValue));
-
-                String responseBody = null;
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    responseBody = EntityUtils.toString(entity);
-                }
-                return new Response(responseHeaders, statuscode, responseBody);
+                return response;
             } catch (IOException e) {
                 e.printStackTrace();
+                retryCount++;
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
-            } finally {
-                try {
-                    if (response != null) {
-                        response.close();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
             }
         }
         return null;
@@ -194,28 +334,35 @@ public class Requests {
      * @param headers A map of HTTP headers to be included in the request.
      * @return An object containing the response headers, status code and body.
      * @throws IOException If an I/O error occurs while making the request.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached and no slot frees up
+     *                                    within {@code limiter.queueTimeout} milliseconds.
      */
     public Response httpPost(String endpoint, String jsonbody,Map<String, String> headers) throws IOException {
-        HttpClient client = HttpClients.createDefault();
-        HttpPost httpPost = new HttpPost(endpoint);
+        return httpPost(URI.create(endpoint), null, jsonbody, headers);
+    }
+
+    /**
+     * Performs an HTTP POST request to an already built URI, retrying on 429 like {@link #httpPost(String, String, Map)}.
+     *
+     * @param uri The URI of the resource to be posted to.
+     * @param fixedHeaders Headers shared by every call of a {@link RequestTemplate}, or null.
+     * @param jsonbody The JSON string to be sent as the request body.
+     * @param headers A map of HTTP headers to be included in the request, or null.
+     * @return An object containing the response headers, status code and body.
+     * @throws IOException If an I/O error occurs while making the request.
+     */
+    Response httpPost(URI uri, Header[] fixedHeaders, String jsonbody, Map<String, String> headers) throws IOException {
+        HttpPost httpPost = new HttpPost(uri);
         httpPost.setHeader("Content-Type", "application/json");
+        setHeaders(httpPost, fixedHeaders, headers);
+        httpPost.setEntity(new StringEntity(jsonbody));
 
         int retryCount=0;
         while(retryCount<=maxRetryCount) {
 
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                httpPost.setHeader(header.getKey(), header.getValue());
-            }
-
-            StringEntity entity = new StringEntity(jsonbody);
-            httpPost.setEntity(entity);
-
-            HttpResponse httpres = null;
-            BufferedReader reader = null;
-
             try {
-                httpres = client.execute(httpPost);
-                int statuscode = httpres.getStatusLine().getStatusCode();
+                Response httpres = execute(httpClient, httpPost);
+                int statuscode = httpres.getStatusCode();
                 logger.info("Post response status :" + statuscode);
                 if (statuscode == 429 ) {
                     logger.info("Received status code " + statuscode+ ", retrying after " + retryDelay / 1000 + " seconds");
@@ -227,30 +374,9 @@ public class Requests {
 
                 }
 
-
-                Map<String, String> responseHeaders = Arrays.stream(httpres.getAllHeaders())
-                        .collect(Collectors.toMap(org.apache.http.Header::getName, org.apache.http.Header::getValue));
-
-                String responseBody = null;
-                HttpEntity res = httpres.getEntity();
-                if (res != null) {
-                    responseBody = EntityUtils.toString(res);
-                }
-
-                return new Response(responseHeaders, statuscode, responseBody);
+                return httpres;
             } catch (IOException | InterruptedException e) {
                 throw new RuntimeException(e);
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-                if (httpres != null) {
-                    EntityUtils.consumeQuietly(httpres.getEntity());
-                }
             }
         }
 
@@ -261,26 +387,72 @@ public class Requests {
     /**
      * This method performs an HTTP DELETE request to the specified endpoint with headers.
      * Retries the request if the response status code is 429(Too many requests) or 500 (Internal Server Error).
+     * <p>
+     * The endpoint is sent as it is. Earlier versions appended the id 1 to it, so callers used to pass the collection,
+     * e.g. ".../todos/". An endpoint ending in "/" is rejected, so that such a call cannot silently delete the whole
+     * collection; use {@link #httpDelete(String, Object, Map)} to delete a resource by id.
+     * </p>
      *
-     * @param endpoint The URL of the resource to be deleted.
+     * @param endpoint The URL of the resource to be deleted, including its id, e.g. ".../todos/1".
      * @param headers A map of HTTP headers to include in the request.
      * @return An object containing the response headers, status code and body.
+     * @throws IllegalArgumentException If the path of the endpoint ends in "/".
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached and no slot frees up
+     *                                    within {@code limiter.queueTimeout} milliseconds.
      */
     public Response httpDelete(String endpoint,Map<String,String> headers) {
+        URI uri = URI.create(endpoint);
+        if (uri.getRawPath() != null && uri.getRawPath().endsWith("/")) {
+            throw new IllegalArgumentException("Refusing to DELETE " + endpoint + ": the path ends in '/', which would "
+                    + "target the collection; pass the resource id with httpDelete(endpoint, id, headers)");
+        }
+        return httpDelete(uri, null, headers);
+    }
+
+    /**
+     * This method performs an HTTP DELETE request to the resource with the given id below a collection endpoint,
+     * e.g. ".../todos" and 1 delete ".../todos/1". The id is percent-encoded.
+     * Retries the request if the response status code is 429(Too many requests) or 500 (Internal Server Error).
+     *
+     * @param endpoint The URL of the collection, with or without a trailing "/".
+     * @param id The id of the resource to be deleted.
+     * @param headers A map of HTTP headers to include in the request.
+     * @return An object containing the response headers, status code and body.
+     * @throws IllegalArgumentException If the id is null, empty or a dot segment.
+     * @throws RejectedExecutionException If the concurrency limit of the host is reached and no slot frees up
+     *                                    within {@code limiter.queueTimeout} milliseconds.
+     */
+    public Response httpDelete(String endpoint, Object id, Map<String,String> headers) {
+        if (id == null) {
+            throw new IllegalArgumentException("Resource id must not be null");
+        }
+        StringBuilder sb = new StringBuilder(endpoint);
+        if (!endpoint.endsWith("/")) {
+            sb.append('/');
+        }
+        RequestTemplate.appendEncoded(sb, String.valueOf(id));
+        return httpDelete(URI.create(sb.toString()), null, headers);
+    }
+
+    /**
+     * Performs an HTTP DELETE request to an already built URI, retrying on 429 and 500 like {@link #httpDelete(String, Map)}.
+     *
+     * @param uri The URI of the resource to be deleted.
+     * @param fixedHeaders Headers shared by every call of a {@link RequestTemplate}, or null.
+     * @param headers A map of HTTP headers to include in the request, or null.
+     * @return An object containing the response headers, status code and body.
+     */
+    Response httpDelete(URI uri, Header[] fixedHeaders, Map<String,String> headers) {
 
         int retryCount = 0;
         while (retryCount <= maxRetryCount) {
-            HttpClient client = HttpClients.createDefault();
-            int id = 1;
-            HttpDelete delete = new HttpDelete(endpoint + id);
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                delete.setHeader(header.getKey(), header.getValue());
-            }
+            HttpDelete delete = new HttpDelete(uri);
+            setHeaders(delete, fixedHeaders, headers);
 
             try {
-                HttpResponse httpResponse = client.execute(delete);
-                logger.info("deleted todo with id :" + id);
-                int statusCode = httpResponse.getStatusLine().getStatusCode();
+                Response httpResponse = execute(httpClient, delete);
+                logger.info("deleted resource :" + uri);
+                int statusCode = httpResponse.getStatusCode();
                 if (statusCode == 429 || statusCode == 500) {
                     logger.info("Received status code " + statusCode+ ", retrying after " + retryDelay / 1000 + " seconds");
                     Thread.sleep(retryDelay);
@@ -288,24 +460,11 @@ public class Requests {
                     continue;
                 }
 
-                Map<String, String> responseHeaders = Arrays.stream(httpResponse.getAllHeaders())
-                        .collect(Collectors.toMap(org.apache.http.Header::getName, org.apache.http.Header::getValue));
-                String responseBody = null;
-                HttpEntity responseEntity = httpResponse.getEntity();
-                if (responseEntity != null) {
-                    responseBody = EntityUtils.toString(responseEntity);
-                }
-                return new Response(responseHeaders, statusCode, responseBody);
+                return httpResponse;
 
 
             } catch (IOException | InterruptedException e) {
                 e.printStackTrace();
-            } finally {
-                try {
-                    ((CloseableHttpClient) client).close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
             }
             return null;
 
@@ -313,6 +472,49 @@ public class Requests {
         return null;
     }
 
+    /**
+     * Closes the pooled HTTP client and its connections. Requests sent after this fail.
+     *
+     * @throws IOException If an I/O error occurs while closing the connections.
+     */
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Applies the fixed headers of a template, then the caller's headers, to a request.
+     * The caller's headers are logged at FINE, with the values of credential headers redacted.
+     *
+     * @param request The request to add the headers to.
+     * @param fixedHeaders Precomputed headers shared by every call, or null.
+     * @param headers A map of HTTP headers for this call only, or null.
+     */
+    private static void setHeaders(HttpUriRequest request, Header[] fixedHeaders, Map<String,String> headers) {
+        if (fixedHeaders != null) {
+            for (Header header : fixedHeaders) {
+                request.setHeader(header);
+            }
+        }
+        if (headers != null) {
+            boolean logHeaders = logger.isLoggable(Level.FINE);
+            if (logHeaders) {
+                logger.fine("Request Headers:");
+            }
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.setHeader(header.getKey(), header.getValue());
+                if (logHeaders) {
+                    logger.fine(header.getKey() + ": " + (isSensitive(header.getKey()) ? "<redacted>" : header.getValue()));
+                }
+            }
+        }
+    }
+
+    private static boolean isSensitive(String headerName) {
+        return headerName.equalsIgnoreCase("Authorization") || headerName.equalsIgnoreCase("Proxy-Authorization")
+                || headerName.equalsIgnoreCase("Cookie");
+    }
+
 }
 
 
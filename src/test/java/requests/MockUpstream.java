@@ -0,0 +1,176 @@
+package requests;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+/**
+ * An in-process upstream for tests, built on WireMock.
+ * <p>
+ *     Besides plain stubs, this rule can inject the failure modes the {@code Requests} class has to cope with:
+ *     fixed latency, a deterministic error rate, bursts of 429 Too Many Requests with a Retry-After header,
+ *     slowly dribbled bodies and connection resets. Everything is served from localhost, so tests using it run
+ *     offline and are repeatable.
+ * </p>
+ */
+public class MockUpstream extends WireMockRule {
+    private int scenarioCount;
+
+    /**
+     * Constructs a new upstream listening on the given port.
+     *
+     * @param port The port to listen on.
+     */
+    public MockUpstream(int port) {
+        super(port);
+    }
+
+    /**
+     * Returns the absolute URL of a path on this upstream.
+     *
+     * @param path The path, starting with a slash.
+     * @return The URL of the path on localhost.
+     */
+    public String url(String path) {
+        return "http://localhost:" + port() + path;
+    }
+
+    /**
+     * Answers every request matching the method and path with the given status and body.
+     *
+     * @param method The HTTP method to match, e.g. "GET".
+     * @param path The URL path to match, query parameters are ignored.
+     * @param status The HTTP status code to return.
+     * @param body The response body.
+     */
+    public void respond(String method, String path, int status, String body) {
+        stubFor(request(method, urlPathEqualTo(path)).willReturn(json(status, body)));
+    }
+
+    /**
+     * Answers every request matching the method and path after a fixed delay.
+     *
+     * @param method The HTTP method to match.
+     * @param path The URL path to match, query parameters are ignored.
+     * @param status The HTTP status code to return.
+     * @param body The response body.
+     * @param delayMillis The delay before the response is sent, in milliseconds.
+     */
+    public void respondWithLatency(String method, String path, int status, String body, int delayMillis) {
+        stubFor(request(method, urlPathEqualTo(path)).willReturn(json(status, body).withFixedDelay(delayMillis)));
+    }
+
+    /**
+     * Answers with a 500 Internal Server Error for one in every {@code period} requests and with the given
+     * status and body otherwise. The failing request is always the last one of each period, so runs are repeatable.
+     *
+     * @param method The HTTP method to match.
+     * @param path The URL path to match, query parameters are ignored.
+     * @param status The HTTP status code of the successful responses.
+     * @param body The body of the successful responses.
+     * @param period The number of requests per failure, at least 1.
+     */
+    public void respondWithErrorRate(String method, String path, int status, String body, int period) {
+        ResponseDefinitionBuilder[] responses = new ResponseDefinitionBuilder[period];
+        for (int i = 0; i < period - 1; i++) {
+            responses[i] = json(status, body);
+        }
+        responses[period - 1] = aResponse().withStatus(500);
+        cycle(method, path, responses);
+    }
+
+    /**
+     * Answers the first {@code burst} requests with 429 Too Many Requests and a Retry-After header,
+     * and every following request with the given status and body.
+     *
+     * @param method The HTTP method to match.
+     * @param path The URL path to match, query parameters are ignored.
+     * @param burst The number of 429 responses before the upstream recovers.
+     * @param retryAfterSeconds The value of the Retry-After header.
+     * @param status The HTTP status code returned after the burst.
+     * @param body The body returned after the burst.
+     */
+    public void respondWithTooManyRequests(String method, String path, int burst, int retryAfterSeconds, int status, String body) {
+        ResponseDefinitionBuilder[] responses = new ResponseDefinitionBuilder[burst + 1];
+        for (int i = 0; i < burst; i++) {
+            responses[i] = aResponse().withStatus(429).withHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+        responses[burst] = json(status, body);
+        sequence(method, path, responses);
+    }
+
+    /**
+     * Answers every request matching the method and path with a body that is dribbled out in chunks over the given time.
+     *
+     * @param method The HTTP method to match.
+     * @param path The URL path to match, query parameters are ignored.
+     * @param status The HTTP status code to return.
+     * @param body The response body.
+     * @param chunks The number of chunks the body is split into.
+     * @param totalMillis The time over which the chunks are sent, in milliseconds.
+     */
+    public void respondWithSlowBody(String method, String path, int status, String body, int chunks, int totalMillis) {
+        stubFor(request(method, urlPathEqualTo(path)).willReturn(json(status, body).withChunkedDribbleDelay(chunks, totalMillis)));
+    }
+
+    /**
+     * Resets the connection for the first {@code resets} requests and answers every following request with the given
+     * status and body.
+     *
+     * @param method The HTTP method to match.
+     * @param path The URL path to match, query parameters are ignored.
+     * @param resets The number of connections reset before the upstream recovers.
+     * @param status The HTTP status code returned after the resets.
+     * @param body The body returned after the resets.
+     */
+    public void respondWithConnectionResets(String method, String path, int resets, int status, String body) {
+        ResponseDefinitionBuilder[] responses = new ResponseDefinitionBuilder[resets + 1];
+        for (int i = 0; i < resets; i++) {
+            responses[i] = aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER);
+        }
+        responses[resets] = json(status, body);
+        sequence(method, path, responses);
+    }
+
+    private static ResponseDefinitionBuilder json(int status, String body) {
+        ResponseDefinitionBuilder response = aResponse()
+                .withStatus(status)
+                .withHeader("Content-Type", "application/json; charset=utf-8");
+        return body == null ? response : response.withBody(body);
+    }
+
+    /**
+     * Serves the responses in order, repeating the last one forever.
+     */
+    private void sequence(String method, String path, ResponseDefinitionBuilder... responses) {
+        chain(method, path, false, responses);
+    }
+
+    /**
+     * Serves the responses in order, starting over after the last one.
+     */
+    private void cycle(String method, String path, ResponseDefinitionBuilder... responses) {
+        chain(method, path, true, responses);
+    }
+
+    private void chain(String method, String path, boolean repeat, ResponseDefinitionBuilder... responses) {
+        String scenario = "mock-upstream-" + (++scenarioCount);
+        for (int i = 0; i < responses.length; i++) {
+            String state = i == 0 ? Scenario.STARTED : "step-" + i;
+            String next;
+            if (i < responses.length - 1) {
+                next = "step-" + (i + 1);
+            } else {
+                next = repeat ? Scenario.STARTED : state;
+            }
+            stubFor(request(method, urlPathEqualTo(path))
+                    .inScenario(scenario)
+                    .whenScenarioStateIs(state)
+                    .willSetStateTo(next)
+                    .willReturn(responses[i]));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package requests;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Throughput and latency regression tests for the {@code Requests} class.
+ * <p>
+ *     Each test warms up, then offers a fixed number of requests at a fixed rate to an in-process {@code MockUpstream}
+ *     and fails the build if throughput drops below, or p99 latency rises above, the thresholds. Like the
+ *     {@code LoadGenerator}, the load is open loop: send times are fixed up front and latency is measured from the
+ *     intended send time, so a request that has to wait for a busy worker is charged for the wait instead of the
+ *     queueing being hidden (coordinated omission).
+ * </p>
+ * <p>
+ *     The client retries after 10 ms instead of the configured delay and runs without the concurrency limiter,
+ *     so a stray 429 or a limiter rejection cannot fail the throughput check for reasons unrelated to the client's
+ *     per-call cost; the limiter has its own tests in {@code TestCases}.
+ * </p>
+ * <p>
+ *     The rate and thresholds can be tuned per machine with system properties:
+ *     {@code perf.rate} (offered requests per second), {@code perf.threads}, {@code perf.warmup}, {@code perf.iterations},
+ *     {@code perf.minThroughput} (requests per second) and {@code perf.maxP99Millis}.
+ * </p>
+ */
+public class PerformanceTests {
+    private static final double RATE = Double.parseDouble(System.getProperty("perf.rate", "250"));
+    private static final int THREADS = Integer.getInteger("perf.threads", 8);
+    private static final int WARMUP = Integer.getInteger("perf.warmup", 200);
+    private static final int ITERATIONS = Integer.getInteger("perf.iterations", 1000);
+    private static final double MIN_THROUGHPUT = Double.parseDouble(System.getProperty("perf.minThroughput", "100"));
+    private static final double MAX_P99_MILLIS = Double.parseDouble(System.getProperty("perf.maxP99Millis", "100"));
+
+    private static final Logger logger = Logger.getLogger(PerformanceTests.class.getName());
+
+    /**
+     * In-process upstream on its own port, so these tests never compete with {@code TestCases} for port 8080.
+     */
+    @Rule
+    public MockUpstream upstream = new MockUpstream(8090);
+
+    private final Requests requests = benchmarkRequests();
+    private final Map<String, String> headers = new HashMap<>();
+
+    /**
+     * Returns a client that retries almost immediately and is not throttled by the concurrency limiter.
+     */
+    private static Requests benchmarkRequests() {
+        Properties properties = new Properties();
+        properties.setProperty("retry.delay", "10");
+        properties.setProperty("limiter.enabled", "false");
+        return new Requests(properties);
+    }
+
+    @Before
+    public void setUp() {
+        headers.put("Accept", "application/json");
+        upstream.respond("GET", "/todos", 200, "[{\"id\": 1, \"title\": \"delectus aut autem\", \"completed\": false}]");
+        upstream.respond("POST", "/todos", 201, "{\"id\": 201}");
+        upstream.respond("DELETE", "/todos/1", 200, "{}");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        requests.close();
+    }
+
+    /**
+     * A single call to the client under test.
+     */
+    private interface Call {
+        Response send() throws Exception;
+    }
+
+    /**
+     * Tests the throughput and p99 latency of {@code httpGet}.
+     *
+     * @throws Exception If the benchmark is interrupted.
+     */
+    @Test
+    public void testHttpGetPerformance() throws Exception {
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("userId", "1");
+        assertPerformance("httpGet", () -> requests.httpGet(upstream.url("/todos"), headers, queryParams));
+    }
+
+    /**
+     * Tests the throughput and p99 latency of {@code httpPost}.
+     *
+     * @throws Exception If the benchmark is interrupted.
+     */
+    @Test
+    public void testHttpPostPerformance() throws Exception {
+        assertPerformance("httpPost", () -> requests.httpPost(upstream.url("/todos"), "{\"title\": \"x\"}", headers));
+    }
+
+    /**
+     * Tests the throughput and p99 latency of {@code httpDelete}.
+     *
+     * @throws Exception If the benchmark is interrupted.
+     */
+    @Test
+    public void testHttpDeletePerformance() throws Exception {
+        assertPerformance("httpDelete", () -> requests.httpDelete(upstream.url("/todos/1"), headers));
+    }
+
+    /**
+     * Tests the throughput and p99 latency of GET and DELETE calls bound from a {@code RequestTemplate}.
+     *
+     * @throws Exception If the benchmark is interrupted.
+     */
+    @Test
+    public void testRequestTemplatePerformance() throws Exception {
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("userId", "1");
+        RequestTemplate todo = new RequestTemplate(requests, upstream.url("/todos/{id}"), headers, null);
+        RequestTemplate todos = new RequestTemplate(requests, upstream.url("/todos"), headers, queryParams);
+        assertPerformance("template get", todos::get);
+        assertPerformance("template delete", () -> todo.delete(1));
+    }
+
+    private void assertPerformance(String name, Call call) throws Exception {
+        run(call, WARMUP, new LatencyHistogram(), new AtomicLong());
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        run(call, ITERATIONS, latencies, errors);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        double throughput = ITERATIONS / seconds;
+        double p99Millis = latencies.getValueAtPercentile(99) / 1000.0;
+        logger.info(String.format("%s: %.0f req/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms", name, throughput,
+                latencies.getValueAtPercentile(50) / 1000.0, p99Millis, latencies.getMaxMicros() / 1000.0));
+
+        assertEquals(name + " failed requests", 0, errors.get());
+        assertTrue(String.format("%s throughput %.0f req/s is below %.0f req/s", name, throughput, MIN_THROUGHPUT),
+                throughput >= MIN_THROUGHPUT);
+        assertTrue(String.format("%s p99 latency %.2f ms is above %.2f ms", name, p99Millis, MAX_P99_MILLIS),
+                p99Millis <= MAX_P99_MILLIS);
+    }
+
+    /**
+     * Offers the calls at {@code RATE} requests per second and records each latency from the call's intended send time.
+     */
+    private void run(Call call, int iterations, LatencyHistogram latencies, AtomicLong errors) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                long intendedStart = start + (long) (i * 1_000_000_000L / RATE);
+                long wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.execute(() -> {
+                    try {
+                        Response response = call.send();
+                        if (response == null || response.getStatusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+                });
+            }
+            executor.shutdown();
+            assertTrue("Benchmark did not finish in time", executor.awaitTermination(5, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,27 +1,31 @@
 package requests;
 
-import com.github.tomakehurst.wiremock.junit.WireMockRule;
-
-
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
-
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
 import static org.junit.Assert.*;
 
 /**
@@ -40,19 +44,40 @@ public class TestCases {
     /**
      * WireMock rule for setting up mock HTTP server responses.
      * <p>
-     * The {@code WireMockRule } listens on port 8080 and allows defining mock HTTP responses for testing purposes.
+     * The {@code MockUpstream} listens on port 8080 and allows defining mock HTTP responses, including injected
+     * latency and failures, for testing purposes. No test talks to a server outside of this process.
      */
 
     @Rule
-    public WireMockRule wireMockRule = new WireMockRule(8080);
+    public MockUpstream upstream = new MockUpstream(8080);
 
 
     Requests requests = new Requests();
 
+    /**
+     * Closes the pooled HTTP client of the shared {@code Requests} instance after each test.
+     *
+     * @throws IOException If the connections cannot be closed.
+     */
+    @After
+    public void tearDown() throws IOException {
+        requests.close();
+    }
+
+    /**
+     * Returns a client that retries almost immediately, for tests that exercise the retry logic.
+     */
+    private static Requests fastRetryRequests() {
+        Properties properties = new Properties();
+        properties.setProperty("retry.maxCount", "3");
+        properties.setProperty("retry.delay", "10");
+        return new Requests(properties);
+    }
+
     /**
      * Tests a successful HTTP GET method
      * <p>
-     *     This test verifies that a GET request to th placeholder API returns a 200 OK status code.
+     *     This test verifies that a GET request to the mock upstream returns a 200 OK status code.
      * </p>
      *
      * @throws Exception If there is an issue with the HTTP request or response.
@@ -60,22 +85,23 @@ public class TestCases {
 
     @Test
     public void  testGetSuccess() throws Exception {
-
-        String baseUrl = "https://jsonplaceholder.typicode.com";
+        upstream.respond("GET", "/todos", 200, "[{\"id\": 1}]");
 
         // Example headers (replace with actual headers needed)
         Map<String, String> headers = new HashMap<>();
         headers.put("Accept", "application/json");
 
-        Response response = new Requests().httpGet(baseUrl + "/todos", headers, null);
+        Response response = new Requests().httpGet(upstream.url("/todos"), headers, null);
 
         assertEquals(200, response.getStatusCode());
+        assertEquals("[{\"id\": 1}]", response.getBody());
+        verify(getRequestedFor(urlEqualTo("/todos")).withHeader("Accept", equalTo("application/json")));
     }
 
     /**
      * Tests a successful HTTP GET request with query parameters.
      * <p>
-     *    This test verifies that a GET request with query parameters to the placeholder API returns a 200 OK status code.
+     *    This test verifies that a GET request with query parameters to the mock upstream returns a 200 OK status code.
      * </p>
      *
      * @throws Exception If there is an issue with the HTTP request or response.
@@ -83,9 +109,7 @@ public class TestCases {
 
     @Test
     public void testGetSuccessQp() throws Exception {
-
-        String baseUrl = "https://jsonplaceholder.typicode.com";
-
+        upstream.respond("GET", "/todos", 200, "[]");
 
         Map<String, String> headers = new HashMap<>();
         headers.put("Accept", "application/json");
@@ -93,10 +117,11 @@ public class TestCases {
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("userID", "1");
 
-        Response response = new Requests().httpGet(baseUrl + "/todos", headers, queryParams);
+        Response response = new Requests().httpGet(upstream.url("/todos"), headers, queryParams);
 
 
         assertEquals(200, response.getStatusCode());
+        verify(getRequestedFor(urlPathEqualTo("/todos")).withQueryParam("userID", equalTo("1")));
 
     }
 
@@ -131,13 +156,15 @@ public class TestCases {
     /**
      * Tests a successful HTTP POST request.
      * <p>
-     * This test verifies that a POST request to the placeholder API with a JSON body and headers returns a 201 Created status code.
+     * This test verifies that a POST request to the mock upstream with a JSON body and headers returns a 201 Created status code.
      * </p>
      */
     @Test
     public void testHttpPost() {
+        upstream.respond("POST", "/todos", 201, "{\"id\": 201}");
+
         // Setup test data
-        String endpoint = "https://jsonplaceholder.typicode.com/todos";
+        String endpoint = upstream.url("/todos");
         String jsonBody = "{\"key\": \"value\"}";
         Map<String, String> headers = new HashMap<>();
         headers.put("Authorization", "Bearer token");
@@ -169,30 +196,20 @@ public class TestCases {
 
     @Test
     public void testHttpPostWithHeaders() throws IOException {
-            String endpoint = "https://jsonplaceholder.typicode.com/todos";
+            upstream.respond("POST", "/todos", 201, "{\"id\": 201}");
+
             String jsonBody = "{\"key\": \"value\"}";
             Map<String, String> headers = new HashMap<>();
             headers.put("Content-Type", "application/json");
             headers.put("Authorization", "Bearer token");
-            HttpClient client = HttpClients.createDefault();
-            HttpPost httpPost = new HttpPost(endpoint);
-            httpPost.setHeader("Content-Type", "application/json");
 
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                httpPost.setHeader(header.getKey(), header.getValue());
-            }
+            Response response = requests.httpPost(upstream.url("/todos"), jsonBody, headers);
 
-            StringEntity entity = new StringEntity(jsonBody);
-            httpPost.setEntity(entity);
-
-            HttpResponse httpResponse = client.execute(httpPost);
-            assertEquals(201, httpResponse.getStatusLine().getStatusCode());
-            Collectors Collectors;
-            Map<String, String> requestHeaders = Arrays.stream(httpResponse.getAllHeaders())
-                    .collect(java.util.stream.Collectors.toMap(org.apache.http.Header::getName, org.apache.http.Header::getValue));
-
-
-            assertEquals("application/json; charset=utf-8", requestHeaders.get("Content-Type"));
+            assertEquals(201, response.getStatusCode());
+            assertEquals("application/json; charset=utf-8", response.getHeaders().get("Content-Type"));
+            verify(postRequestedFor(urlEqualTo("/todos"))
+                    .withHeader("Content-Type", equalTo("application/json"))
+                    .withHeader("Authorization", equalTo("Bearer token")));
 
         }
 
@@ -271,61 +288,618 @@ public class TestCases {
     /**
      * Tests the behavior of the HTTP DELETE request.
      * <p>
-     * This test verifies that a DELETE request to the placeholder API returns a 200 OK status code.
+     * This test verifies that a DELETE request to the mock upstream returns a 200 OK status code.
      * </p>
-     *
-     * @throws MalformedURLException If the URL is invalid.
      */
     @Test
-    public void testDelete() throws MalformedURLException {
-        String url = "https://jsonplaceholder.typicode.com/todos ";
-        URL deleteUrl = new URL(url);
-        HttpURLConnection connection;
+    public void testDelete() {
+        upstream.respond("DELETE", "/todos/1", 200, "{}");
+
+        Response response = requests.httpDelete(upstream.url("/todos/1"), new HashMap<>());
+
+        assertNotNull(response);
+        assertEquals("Expected HTTP 200 (OK) response code", 200, response.getStatusCode());
+        verify(deleteRequestedFor(urlEqualTo("/todos/1")));
+
+    }
+
+    /**
+     * Tests the HTTP DELETE request by id and the guard against the old call shape.
+     * <p>
+     * This test verifies that the id is appended to the collection endpoint, and that an endpoint ending in "/",
+     * which used to get the id 1 appended, is rejected instead of deleting the collection.
+     * </p>
+     */
+    @Test
+    public void testDeleteById() {
+        upstream.respond("DELETE", "/todos/1", 200, "{}");
+
+        assertEquals(200, requests.httpDelete(upstream.url("/todos"), 1, new HashMap<>()).getStatusCode());
+        assertEquals(200, requests.httpDelete(upstream.url("/todos/"), 1, new HashMap<>()).getStatusCode());
+        verify(2, deleteRequestedFor(urlEqualTo("/todos/1")));
+
         try {
-            connection = (HttpURLConnection) deleteUrl.openConnection();
+            requests.httpDelete(upstream.url("/todos/"), new HashMap<>());
+            fail("Expected IllegalArgumentException for an endpoint ending in '/'");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("httpDelete(endpoint, id, headers)"));
+        }
+        verify(0, deleteRequestedFor(urlEqualTo("/todos/")));
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Tests the behavior of the HTTP DELETE request.
+     * <p>
+     * This test verifies that a DELETE request with headers to the mock upstream returns a 200 OK status code
+     * and that the headers reach the server.
+     * </p>
+     */
+
+    @Test
+    public void testDeleteHeaders() {
+        upstream.respond("DELETE", "/todos/1", 200, "{}");
+
+        String authorizationHeader = "Bearer your_access_token";
+        String contentTypeHeader = "application/json";
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", authorizationHeader);
+        headers.put("Content-Type", contentTypeHeader);
+
+        Response response = requests.httpDelete(upstream.url("/todos/1"), headers);
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue("Expected Content-Type header to be 'application/json'",
+                response.getHeaders().get("Content-Type").startsWith(contentTypeHeader));
+        verify(deleteRequestedFor(urlEqualTo("/todos/1"))
+                .withHeader("Authorization", equalTo(authorizationHeader))
+                .withHeader("Content-Type", equalTo(contentTypeHeader)));
+
+
+    }
+
+    /**
+     * Tests the retry logic for HTTP GET requests against a burst of 429 responses.
+     * <p>
+     * This test verifies that {@code httpGet} retries through a burst of 429 Too Many Requests responses
+     * carrying a Retry-After header and returns the response sent once the upstream recovers.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testGetRetriesThroughTooManyRequestsBurst() throws IOException {
+        upstream.respondWithTooManyRequests("GET", "/todos", 2, 1, 200, "[]");
+
+        Response response = fastRetryRequests().httpGet(upstream.url("/todos"), new HashMap<>(), null);
+
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        verify(3, getRequestedFor(urlEqualTo("/todos")));
+    }
+
+    /**
+     * Tests the retry logic for HTTP DELETE requests against an upstream with an error rate.
+     * <p>
+     * This test verifies that the 500 responses injected every third request are retried transparently.
+     * </p>
+     */
+    @Test
+    public void testDeleteRetriesInjectedErrors() {
+        upstream.respondWithErrorRate("DELETE", "/todos/1", 200, "{}", 3);
+        Requests retrying = fastRetryRequests();
+
+        for (int i = 0; i < 4; i++) {
+            Response response = retrying.httpDelete(upstream.url("/todos/1"), new HashMap<>());
+            assertNotNull(response);
+            assertEquals(200, response.getStatusCode());
         }
-        int responseCode;
+        // the third request fails once and is retried
+        verify(5, deleteRequestedFor(urlEqualTo("/todos/1")));
+    }
+
+    /**
+     * Tests the HTTP GET request against a slow upstream.
+     * <p>
+     * This test verifies that injected latency and a slowly dribbled body are waited for and read completely.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testGetSlowUpstream() throws IOException {
+        String body = "[{\"id\": 1, \"title\": \"delectus aut autem\"}]";
+        upstream.respondWithLatency("GET", "/todos/1", 200, body, 200);
+        upstream.respondWithSlowBody("GET", "/todos", 200, body, 5, 200);
+
+        long start = System.nanoTime();
+        Response delayed = requests.httpGet(upstream.url("/todos/1"), new HashMap<>(), null);
+        Response dribbled = requests.httpGet(upstream.url("/todos"), new HashMap<>(), null);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(body, delayed.getBody());
+        assertEquals(body, dribbled.getBody());
+        assertTrue("Expected the injected delays to be observed, took " + elapsedMillis + " ms", elapsedMillis >= 400);
+    }
+
+    /**
+     * Tests the HTTP GET request against an upstream that resets connections.
+     * <p>
+     * This test verifies that a reset connection is retried and the response sent after the upstream recovers
+     * is returned, and that a permanently failing upstream gives up after the max retry count.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testGetRetriesConnectionReset() throws IOException {
+        upstream.respondWithConnectionResets("GET", "/todos", 1, 200, "[]");
+        upstream.respondWithConnectionResets("GET", "/down", 100, 200, "[]");
+        Requests retrying = fastRetryRequests();
+
+        Response response = retrying.httpGet(upstream.url("/todos"), new HashMap<>(), null);
+        assertEquals(200, response.getStatusCode());
+
+        assertNull(retrying.httpGet(upstream.url("/down"), new HashMap<>(), null));
+    }
+
+    /**
+     * Tests the open loop load generator against a local WireMock stub.
+     * <p>
+     * This test verifies that request specs are read from a JSONL file, replayed at the target rate
+     * and reported per endpoint with latency percentiles.
+     * </p>
+     *
+     * @throws Exception If the spec file cannot be written or the run is interrupted.
+     */
+    @Test
+    public void testLoadGeneratorReplay() throws Exception {
+        stubFor(get(urlPathEqualTo("/todos"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("[]")));
+        stubFor(post(urlEqualTo("/todos"))
+                .willReturn(aResponse()
+                        .withStatus(201)));
+
+        Path specFile = Files.createTempFile("specs", ".jsonl");
+        Files.write(specFile, Arrays.asList(
+                "{\"name\": \"list\", \"method\": \"GET\", \"endpoint\": \"/todos\", \"headers\": {\"Accept\": \"application/json\"}, \"queryParams\": {\"userId\": \"1\"}}",
+                "",
+                "{\"name\": \"create\", \"method\": \"POST\", \"endpoint\": \"/todos\", \"body\": \"{\\\"key\\\": \\\"value\\\"}\"}"));
+        List<RequestSpec> specs = RequestSpec.readAll(specFile);
+        Files.delete(specFile);
+        assertEquals(2, specs.size());
+        assertEquals("{\"key\": \"value\"}", specs.get(1).getBody());
+
+        LoadGenerator generator = new LoadGenerator(requests, specs);
+        generator.setBaseUrl("http://localhost:8080");
+        generator.setTargetRate(40);
+        generator.setRampUpMillis(500);
+        generator.setDurationMillis(1500);
+        LoadReport report = generator.run();
+
+        // 40 req/s for 1 s plus half of that during the 0.5 s ramp up
+        assertEquals(50, report.getTotalCount(), 2);
+        LoadReport.EndpointStats list = report.getEndpoints().get("list");
+        assertNotNull(list);
+        assertEquals(0, list.getErrors());
+        assertEquals(0, report.getEndpoints().get("create").getErrors());
+        assertTrue(list.getLatencies().getValueAtPercentile(50) > 0);
+        assertTrue(list.getLatencies().getValueAtPercentile(99) <= list.getLatencies().getMaxMicros());
+        verify(postRequestedFor(urlEqualTo("/todos")).withRequestBody(equalToJson("{\"key\":\"value\"}")));
+    }
+
+    /**
+     * Tests that malformed request spec lines are rejected.
+     * <p>
+     * This test verifies that truncated escapes, trailing content and bare tokens other than true, false, null
+     * or numbers fail with an {@code IllegalArgumentException}, which {@code readAll} reports with the line number.
+     * </p>
+     *
+     * @throws IOException If the spec file cannot be written.
+     */
+    @Test
+    public void testRequestSpecRejectsMalformedJson() throws IOException {
+        String[] malformed = {
+                "{\"endpoint\":\"a\\",
+                "{\"endpoint\":\"a\\u12\"}",
+                "{\"endpoint\":\"/x\"} garbage",
+                "{\"method\": get, \"endpoint\": \"/x\"}",
+                "{\"endpoint\": tru}",
+                "{\"endpoint\": \"/x\", \"body\": {\"title\": \"x\", \"n\": [1, 2]}}",
+                "{\"endpoint\": [\"/x\"]}",
+                "{\"endpoint\": \"/x\", \"headers\": {\"Accept\": [\"a\", \"b\"]}}",
+                "{\"endpoint\": \"/x\", \"queryParams\": {\"filter\": {\"id\": 1}}}"
+        };
+        for (String line : malformed) {
+            try {
+                RequestSpec.parse(line);
+                fail("Expected IllegalArgumentException for " + line);
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+        assertEquals("/xA", RequestSpec.parse("{\"endpoint\": \"/x\\u0041\", \"retries\": -1.5e3, \"enabled\": true}").getEndpoint());
+
+        Path specFile = Files.createTempFile("specs", ".jsonl");
+        Files.write(specFile, Arrays.asList("{\"endpoint\": \"/ok\"}", "{\"endpoint\":\"a\\"));
         try {
-            responseCode = connection.getResponseCode();
+            RequestSpec.readAll(specFile);
+            fail("Expected IOException for a truncated line");
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            assertTrue(e.getMessage().startsWith("Invalid request spec on line 2"));
+        } finally {
+            Files.delete(specFile);
         }
-        connection.disconnect();
-        assertEquals("Expected HTTP 200 (OK) response code", HttpURLConnection.HTTP_OK, responseCode);
+    }
 
+    /**
+     * Tests the percentiles reported by the latency histogram.
+     * <p>
+     * This test verifies that recorded values are reported within the histogram's precision.
+     * </p>
+     */
+    @Test
+    public void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.recordMicros(i * 100L);
+        }
+        assertEquals(10000, histogram.getTotalCount());
+        assertEquals(500000, histogram.getValueAtPercentile(50), 500000 * 0.02);
+        assertEquals(990000, histogram.getValueAtPercentile(99), 990000 * 0.02);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        assertEquals(1000000, histogram.getMaxMicros());
     }
 
     /**
-     * Tests the behavior of the HTTP DELETE request.
+     * Tests the AIMD behavior of the concurrency limiter.
      * <p>
-     * This test verifies that a DELETE request with headers to the placeholder API returns a 200 OK status code.
+     * This test verifies that requests over the limit are rejected, that the limit grows while the host is healthy
+     * and that it shrinks multiplicatively on a drop.
+     * </p>
+     */
+    @Test
+    public void testConcurrencyLimiterAimd() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8, 0.5, 2.0, 0);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.acquire());
+        }
+        assertFalse(limiter.acquire());
+        assertEquals(4, limiter.getInFlight());
+
+        // roughly one window of healthy responses grows the limit by one
+        for (int i = 0; i < 5; i++) {
+            limiter.release(1_000_000, false);
+            assertTrue(limiter.acquire());
+        }
+        assertEquals(5, limiter.getLimit());
+
+        limiter.release(1_000_000, true);
+        assertEquals(2, limiter.getLimit());
+
+        // a single response far slower than the others is not a drop
+        limiter.release(500_000_000, false);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Tests the latency signal of the adaptive concurrency limiter.
+     * <p>
+     * This test verifies that a healthy host serving a mix of fast and slow endpoints keeps its limit,
+     * and that a whole window of responses far slower than the baseline backs the limit off exactly once.
+     * </p>
+     */
+    @Test
+    public void testConcurrencyLimiterToleratesLatencyTail() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 200, 0.9, 2.0, 0);
+        // one request in flight at a time never grows the limit, so any backoff would show
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(i % 5 == 4 ? 50_000_000 : 2_000_000, false);
+        }
+        assertEquals(20, limiter.getLimit());
+
+        // one window of 50 responses far slower than the baseline
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(500_000_000, false);
+        }
+        assertEquals(18, limiter.getLimit());
+    }
+
+    /**
+     * Tests that the per host limiter backs off when the upstream answers with 429 Too Many Requests.
+     * <p>
+     * This test verifies that every 429 response received by {@code httpGet} shrinks the limit of that host only.
      * </p>
      *
-     * @throws MalformedURLException If the URL is invalid.
+     * @throws IOException If there is an issue with the HTTP request or response.
      */
+    @Test
+    public void testLimiterBacksOffOn429() throws IOException {
+        stubFor(get(urlEqualTo("/busy"))
+                .willReturn(aResponse()
+                        .withStatus(429)));
+
+        Properties properties = new Properties();
+        properties.setProperty("retry.maxCount", "2");
+        properties.setProperty("retry.delay", "10");
+        properties.setProperty("limiter.initialLimit", "10");
+        properties.setProperty("limiter.backoffRatio", "0.5");
+        Requests limited = new Requests(properties);
 
+        assertNull(limited.httpGet("http://localhost:8080/busy", new HashMap<>(), null));
+
+        assertEquals(1, limited.getLimiter("http://localhost:8080/").getLimit());
+        assertEquals(0, limited.getLimiter("http://localhost:8080/").getInFlight());
+        assertEquals(10, limited.getLimiter("http://127.0.0.1:8081/").getLimit());
+        verify(3, getRequestedFor(urlEqualTo("/busy")));
+    }
+
+    /**
+     * Tests that a slowly dribbled body keeps its limiter slot until it has been read.
+     * <p>
+     * This test verifies that the slot is still in flight after the response headers have arrived and is only
+     * released once the whole body has been read.
+     * </p>
+     *
+     * @throws Exception If there is an issue with the HTTP request or response.
+     */
     @Test
-    public void testDeleteHeaders() throws IOException {
-        String url ="https://jsonplaceholder.typicode.com/todos";
-        String authorizationHeader = "Bearer your_access_token";
-        String contentTypeHeader = "application/json";
-        URL deleteUrl = new URL(url);
-        HttpURLConnection connection = (HttpURLConnection) deleteUrl.openConnection();
-        connection.setRequestProperty("Authorization", authorizationHeader);
-        connection.setRequestProperty("Content-Type", contentTypeHeader);
-        String contentType = connection.getHeaderField("Content-Type");
-        assertTrue("Expected Content-Type header to be 'application/json'",
-                contentType.startsWith(contentTypeHeader));
-        connection.disconnect();
+    public void testLimiterHoldsSlotWhileBodyIsRead() throws Exception {
+        String body = "[{\"id\": 1, \"title\": \"delectus aut autem\"}]";
+        upstream.respondWithSlowBody("GET", "/todos", 200, body, 5, 500);
+        ConcurrencyLimiter limiter = requests.getLimiter(upstream.url("/"));
 
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> pending = executor.submit(() -> requests.httpGet(upstream.url("/todos"), new HashMap<>(), null));
+            Thread.sleep(250);
+            assertEquals(1, limiter.getInFlight());
+
+            assertEquals(body, pending.get().getBody());
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests the bearer token auth provider against an upstream that rejects a stale token.
+     * <p>
+     * This test verifies that a 401 Unauthorized response invalidates the cached token and the request is retried
+     * exactly once with a freshly fetched token, and that the fresh token is then reused without another fetch.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testBearerTokenRetriesOnceOn401() throws IOException {
+        stubFor(get(urlEqualTo("/secure"))
+                .withHeader("Authorization", equalTo("Bearer stale"))
+                .willReturn(aResponse()
+                        .withStatus(401)));
+        stubFor(get(urlEqualTo("/secure"))
+                .withHeader("Authorization", equalTo("Bearer fresh"))
+                .willReturn(aResponse()
+                        .withStatus(200)));
 
+        AtomicInteger fetches = new AtomicInteger();
+        try (AuthProvider auth = new BearerTokenAuthProvider(() -> CredentialCache.Credential.of(
+                fetches.incrementAndGet() == 1 ? "stale" : "fresh", 60_000), 5_000)) {
+            requests.setAuthProvider(auth);
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Authorization", "Bearer ignored");
+            assertEquals(200, requests.httpGet(upstream.url("/secure"), headers, null).getStatusCode());
+            assertEquals(200, requests.httpGet(upstream.url("/secure"), headers, null).getStatusCode());
+
+            assertEquals(2, fetches.get());
+            verify(1, getRequestedFor(urlEqualTo("/secure")).withHeader("Authorization", equalTo("Bearer stale")));
+            verify(2, getRequestedFor(urlEqualTo("/secure")).withHeader("Authorization", equalTo("Bearer fresh")));
+        }
     }
 
+    /**
+     * Tests that the credential cache fetches only once for many concurrent callers and refreshes in the background.
+     * <p>
+     * This test verifies that threads waiting for a missing credential share a single fetch, and that the credential
+     * is replaced before it expires without any caller asking for it.
+     * </p>
+     *
+     * @throws Exception If a caller fails or the test is interrupted.
+     */
+    @Test
+    public void testCredentialCacheSingleFlightAndBackgroundRefresh() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        try (CredentialCache<String> cache = new CredentialCache<>(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return CredentialCache.Credential.of("token-" + fetches.incrementAndGet(), 2_000);
+        }, 1_000)) {
+            ExecutorService callers = Executors.newFixedThreadPool(64);
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                tokens.add(callers.submit(cache::get));
+            }
+            for (Future<String> token : tokens) {
+                assertEquals("token-1", token.get());
+            }
+            callers.shutdown();
+            assertEquals(1, fetches.get());
 
+            // refreshed one second after the first fetch, well before the token expires
+            Thread.sleep(1_500);
+            assertEquals(2, fetches.get());
+            assertEquals("token-2", cache.get());
+        }
+    }
 
+    /**
+     * Tests the credential cache against a source that only hands out already expired credentials.
+     * <p>
+     * This test verifies that the background refresh is not rescheduled in a tight loop, that it stops once the
+     * source keeps returning the same expiry, and that a closed cache no longer fetches.
+     * </p>
+     *
+     * @throws Exception If the test is interrupted.
+     */
+    @Test
+    public void testCredentialCacheWithExpiredCredential() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        long expiresAt = System.currentTimeMillis() - 1;
+        CredentialCache<String> cache = new CredentialCache<>(() -> {
+            fetches.incrementAndGet();
+            return new CredentialCache.Credential<>("expired", expiresAt);
+        }, 0);
+        try {
+            assertEquals("expired", cache.get());
+            // one retry after the one second floor, then no more, since the expiry did not move
+            Thread.sleep(2_500);
+            assertEquals(2, fetches.get());
+        } finally {
+            cache.close();
+        }
+
+        try {
+            cache.get();
+            fail("Expected a closed cache to refuse to fetch");
+        } catch (IOException e) {
+            assertEquals("Credential cache is closed", e.getMessage());
+        }
+        assertEquals(2, fetches.get());
+    }
+
+    /**
+     * Tests the HMAC auth provider.
+     * <p>
+     * This test verifies that a POST request carries a key id, a timestamp and a signature over the method, path,
+     * timestamp and body that the server can recompute with the shared secret.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testHmacSignedPost() throws IOException {
+        upstream.respond("POST", "/todos", 201, "{}");
+        HmacAuthProvider.SigningKey key = new HmacAuthProvider.SigningKey("key-1", "secret".getBytes(StandardCharsets.UTF_8));
+        try (AuthProvider auth = new HmacAuthProvider(() -> new CredentialCache.Credential<>(key, Long.MAX_VALUE), 0)) {
+            requests.setAuthProvider(auth);
+            assertEquals(201, requests.httpPost(upstream.url("/todos"), "{\"key\":\"value\"}", new HashMap<>()).getStatusCode());
+        }
+
+        LoggedRequest sent = findAll(postRequestedFor(urlEqualTo("/todos"))).get(0);
+        String timestamp = sent.getHeader("X-Auth-Timestamp");
+        HttpPost expected = new HttpPost(upstream.url("/todos"));
+        expected.setEntity(new StringEntity("{\"key\":\"value\"}"));
+        String signature = HmacAuthProvider.sign(key, HmacAuthProvider.stringToSign(expected, timestamp));
+        assertEquals("HMAC-SHA256 keyId=key-1,signature=" + signature, sent.getHeader("Authorization"));
+    }
+
+    /**
+     * Tests that the HMAC auth provider refuses to sign a body it cannot read without consuming it.
+     *
+     * @throws IOException If there is an issue building the request.
+     */
+    @Test(expected = IOException.class)
+    public void testHmacRejectsNonRepeatableBody() throws IOException {
+        HttpPost post = new HttpPost(upstream.url("/todos"));
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream("{\"key\":\"value\"}".getBytes(StandardCharsets.UTF_8))));
+        HmacAuthProvider.stringToSign(post, "0");
+    }
+
+    /**
+     * Tests DELETE and POST requests bound from a request template.
+     * <p>
+     * This test verifies that path variables are bound per call and percent-encoded, and that the template's
+     * fixed headers are sent with every call.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testRequestTemplateDelete() throws IOException {
+        upstream.respond("DELETE", "/todos/7", 200, "{}");
+        upstream.respond("DELETE", "/users/jane%20doe/todos/8", 200, "{}");
+        upstream.respond("POST", "/users/1/todos", 201, "{}");
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer token");
+        RequestTemplate todo = new RequestTemplate(requests, upstream.url("/todos/{id}"), headers, null);
+        RequestTemplate userTodo = new RequestTemplate(requests, upstream.url("/users/{user}/todos/{id}"), headers, null);
+        RequestTemplate userTodos = new RequestTemplate(requests, upstream.url("/users/{user}/todos"), headers, null);
+
+        assertEquals(200, todo.delete(7).getStatusCode());
+        assertEquals(200, userTodo.delete("jane doe", 8).getStatusCode());
+        assertEquals(201, userTodos.post("{\"key\":\"value\"}", 1).getStatusCode());
+
+        verify(deleteRequestedFor(urlEqualTo("/todos/7")).withHeader("Authorization", equalTo("Bearer token")));
+        verify(deleteRequestedFor(urlEqualTo("/users/jane%20doe/todos/8")).withHeader("Authorization", equalTo("Bearer token")));
+        verify(postRequestedFor(urlEqualTo("/users/1/todos"))
+                .withHeader("Content-Type", equalTo("application/json"))
+                .withRequestBody(equalToJson("{\"key\":\"value\"}")));
+    }
+
+    /**
+     * Tests GET requests bound from a request template with a fixed query string.
+     * <p>
+     * This test verifies that the fixed query parameters are encoded once and sent with every call,
+     * and that binding the wrong number of path values is rejected.
+     * </p>
+     *
+     * @throws IOException If there is an issue with the HTTP request or response.
+     */
+    @Test
+    public void testRequestTemplateGetWithQuery() throws IOException {
+        upstream.respond("GET", "/todos", 200, "[]");
+
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("title", "a&b c");
+        RequestTemplate todos = new RequestTemplate(requests, upstream.url("/todos"), null, queryParams);
+
+        assertSame(todos.bind(), todos.bind());
+        assertEquals(200, todos.get().getStatusCode());
+        assertEquals(200, todos.get().getStatusCode());
+        verify(2, getRequestedFor(urlPathEqualTo("/todos")).withQueryParam("title", equalTo("a&b c")));
+
+        try {
+            new RequestTemplate(requests, upstream.url("/todos/{id}"), null, null).bind();
+            fail("Expected IllegalArgumentException for a missing path value");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Expected 1 path values for id but got 0", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the URIs bound from request templates with unusual values and fragments.
+     * <p>
+     * This test verifies that null and empty path values are rejected instead of producing ".../todos/null" or a
+     * trailing slash, and that the fixed query string is inserted before a fragment rather than after it.
+     * </p>
+     */
+    @Test
+    public void testRequestTemplateBindRejectsNullAndEmptyValues() {
+        RequestTemplate todo = new RequestTemplate(requests, "http://localhost:8080/todos/{id}", null, null);
+        for (Object value : new Object[]{null, ""}) {
+            try {
+                todo.bind(value);
+                fail("Expected IllegalArgumentException for path value " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("a", "b");
+        assertEquals("http://localhost:8080/todos?a=b#frag",
+                new RequestTemplate(requests, "http://localhost:8080/todos#frag", null, queryParams).bind().toString());
+        assertEquals("http://localhost:8080/todos/1?x=1&a=b#frag",
+                new RequestTemplate(requests, "http://localhost:8080/todos/{id}?x=1#frag", null, queryParams).bind(1).toString());
+    }
 
     }
 